@@ -1,5 +1,7 @@
 import lexer.Lexer;
+import parser.ASTCache;
 import parser.ASTProgram;
+import parser.ASTStatement;
 import parser.Parser;
 import semantics.SemanticVisitor;
 import visitors.InterpretationVisitor;
@@ -8,6 +10,7 @@ import visitors.XMLVisitor;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.time.LocalDateTime;
 
@@ -39,12 +42,29 @@ public class Main {
     public static void compile(String sourcePath) throws Exception {
         counter++;
 
-        Lexer lexer = new Lexer(sourcePath);
+        run(parse(sourcePath));
+    }
 
-        Parser parser = new Parser(lexer);
+    /**
+     * Compiles a program like compile(), but parses the body of each function only when the function is first
+     * called, so the bodies of functions which are never called are neither parsed nor checked (and are written
+     * as UnparsedBlock elements in the XML file). The AST cache is not used, since it stores whole programs.
+     * @param sourcePath path of the program
+     */
+    public static void compileLazily(String sourcePath) throws Exception {
+        counter++;
 
-        ASTProgram abstractSyntaxTree = parser.parseProgram();
+        Parser parser = new Parser(new Lexer(sourcePath).tokenise());
+        parser.setLazyFunctionBodies(true);
 
+        run(parser.parseProgram());
+    }
+
+    /**
+     * Writes the XML file of a program, then checks and interprets it
+     * @param abstractSyntaxTree program AST
+     */
+    private static void run(ASTProgram abstractSyntaxTree) throws Exception {
         XMLVisitor xmlVisitor = new XMLVisitor(abstractSyntaxTree);
 
         LocalDateTime now = LocalDateTime.now();
@@ -73,6 +93,47 @@ public class Main {
         interpretationVisitor.interpret();
     }
 
+    /**
+     * Parses a program, skipping lexing and parsing when the same source was compiled before
+     * The cache never makes compilation fail: when its directory cannot be used, the program is parsed directly.
+     * @param sourcePath path of the program
+     * @return program AST
+     */
+    private static ASTProgram parse(String sourcePath) throws Exception {
+        try {
+            return new ASTCache(getPathToCurrentDirectory() + "/cache").parse(sourcePath);
+        } catch (IOException e) {
+            return new Parser(new Lexer(sourcePath)).parseProgram();
+        }
+    }
+
+    /**
+     * Compiles a program one top-level statement at a time: each statement is checked and run as soon as it is
+     * parsed, so output starts straight away and only the declarations are kept in memory
+     * Statements can only use functions, structs and variables declared before them (the same rule as compile()),
+     * so no statement has to wait for a later one. Unlike compile(), the statements before a semantic error have
+     * already run when it is found, and no XML file is written.
+     * @param sourcePath path of the program
+     */
+    public static void compileStreaming(String sourcePath) throws Exception {
+        counter++;
+
+        Parser parser = new Parser(new Lexer(sourcePath));
+        SemanticVisitor semanticVisitor = new SemanticVisitor();
+        InterpretationVisitor interpretationVisitor = new InterpretationVisitor();
+
+        try {
+            ASTStatement statement;
+
+            while ((statement = parser.parseNextStatement()) != null) {
+                semanticVisitor.visit(statement);
+                interpretationVisitor.visit(statement);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
     public static String getPathToCurrentDirectory() throws URISyntaxException {
         return new File(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI())
                 .getParentFile()
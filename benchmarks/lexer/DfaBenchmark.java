@@ -0,0 +1,194 @@
+package lexer;
+
+import java.io.CharArrayReader;
+import java.nio.CharBuffer;
+import java.util.Random;
+
+import static lexer.States.ERROR;
+import static lexer.States.START;
+
+/*
+    Benchmark of the generated DFA against the table-driven lexer it replaced
+    Two things are measured on the same source:
+        - the transition lookups alone: the DFA is run over the character categories of the source (going back to
+          START after every ERROR), with the int[][] table of States and with the byte table of CompressedDfa
+        - whole lexing: Lexer.tokenise() against ReferenceLexer, the lexer before the rewrite (which also classifies
+          characters with regular expressions and rolls back with boxed collections, so this is not the table alone)
+    Every measurement is repeated a number of rounds, alternating between the two, and the fastest round of each is
+    printed. Without programs, a source is generated from random statements.
+    This directory is a separate source root, it is not part of the compiler. Run from the project directory:
+        javac -d out $(find lexer parser semantics visitors benchmarks -name '*.java') Main.java
+        java -cp out lexer.DfaBenchmark [rounds] [program ...]
+ */
+public class DfaBenchmark {
+    //Number of times the categories are walked in a round of the lookup measurement
+    private static final int WALKS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        char[] source;
+
+        if (args.length > 1) {
+            StringBuilder programs = new StringBuilder();
+
+            for (int i = 1; i < args.length; i++) {
+                programs.append(Lexer.readFile(args[i])).append('\n');
+            }
+
+            source = programs.toString().toCharArray();
+        } else {
+            source = generateSource(1 << 20);
+        }
+
+        System.out.println("Characters: " + source.length + ", rounds: " + rounds + ", "
+                + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+
+        measureLookups(categories(source), rounds);
+        measureLexing(source, rounds);
+    }
+
+    //Measures the transition lookups of both tables and prints the time per character of their fastest rounds
+    private static void measureLookups(byte[] categories, int rounds) {
+        long bestTable = Long.MAX_VALUE;
+        long bestCompressed = Long.MAX_VALUE;
+        long sum = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            sum += walkTable(categories);
+            bestTable = Math.min(bestTable, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sum -= walkCompressed(categories);
+            bestCompressed = Math.min(bestCompressed, System.nanoTime() - start);
+        }
+
+        //Both walks count the same states, which also keeps the JIT from removing them
+        if (sum != 0) {
+            throw new IllegalStateException("The tables went through different states");
+        }
+
+        double steps = (double) categories.length * WALKS;
+        System.out.println(String.format("Lookups:  States int[][] %8.3f ns/char, CompressedDfa %8.3f ns/char",
+                bestTable / steps, bestCompressed / steps));
+    }
+
+    private static long walkTable(byte[] categories) {
+        int[][] table = States.transitionTable;
+        long sum = 0;
+
+        for (int walk = 0; walk < WALKS; walk++) {
+            int state = START;
+
+            for (byte category : categories) {
+                state = table[state][category];
+
+                if (state == ERROR) {
+                    state = START;
+                }
+
+                sum += state;
+            }
+        }
+
+        return sum;
+    }
+
+    private static long walkCompressed(byte[] categories) {
+        int[] rowOffsets = CompressedDfa.ROW_OFFSETS;
+        byte[] transitions = CompressedDfa.TRANSITIONS;
+        long sum = 0;
+
+        for (int walk = 0; walk < WALKS; walk++) {
+            int state = START;
+
+            for (byte category : categories) {
+                state = transitions[rowOffsets[state] + category];
+
+                if (state == ERROR) {
+                    state = START;
+                }
+
+                sum += state;
+            }
+        }
+
+        return sum;
+    }
+
+    //Measures both lexers on the whole source and prints the time per character of their fastest rounds
+    private static void measureLexing(char[] source, int rounds) throws Exception {
+        long bestReference = Long.MAX_VALUE;
+        long bestLexer = Long.MAX_VALUE;
+
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            int referenceTokens = 0;
+            ReferenceLexer referenceLexer = new ReferenceLexer(new CharArrayReader(source));
+
+            while (referenceLexer.getNextToken() != null) {
+                referenceTokens++;
+            }
+
+            bestReference = Math.min(bestReference, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int tokens = new Lexer(CharBuffer.wrap(source)).tokenise().size();
+            bestLexer = Math.min(bestLexer, System.nanoTime() - start);
+
+            if (tokens != referenceTokens) {
+                throw new IllegalStateException("The lexers found " + tokens + " and " + referenceTokens + " tokens");
+            }
+        }
+
+        System.out.println(String.format("Lexing:   ReferenceLexer %8.3f ns/char, Lexer         %8.3f ns/char",
+                (double) bestReference / source.length, (double) bestLexer / source.length));
+    }
+
+    //Gets the category of every character of the source, as the lexer computes them
+    private static byte[] categories(char[] source) {
+        Lexer lexer = new Lexer(CharBuffer.wrap(new char[0]));
+        byte[] categories = new byte[source.length];
+
+        for (int i = 0; i < source.length; i++) {
+            categories[i] = (byte) lexer.categoriseCharacter(source[i]);
+        }
+
+        return categories;
+    }
+
+    //Generates a program of random statements without lexical errors (the same program on every run)
+    private static char[] generateSource(int length) {
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder(length + 256);
+
+        while (source.length() < length) {
+            String name = "value_" + random.nextInt(1000);
+
+            switch (random.nextInt(5)) {
+                case 0:
+                    source.append("let ").append(name).append(": int = ").append(random.nextInt(100000))
+                            .append(" + ").append(name).append(" * 2;\n");
+                    break;
+                case 1:
+                    source.append("let ").append(name).append(": float = ").append(random.nextInt(1000)).append('.')
+                            .append(random.nextInt(1000)).append(" / 3.5;\n");
+                    break;
+                case 2:
+                    source.append("if (").append(name).append(" >= 10 and ").append(name)
+                            .append(" != 20) { print \"large\"; } else { print 'c'; }\n");
+                    break;
+                case 3:
+                    source.append("// counts down ").append(name).append('\n')
+                            .append("while (").append(name).append(" > 0) { ").append(name).append(" = ")
+                            .append(name).append(" - 1; }\n");
+                    break;
+                default:
+                    source.append("/* returns ").append(name).append(" */ return ").append(name).append(";\n");
+                    break;
+            }
+        }
+
+        return source.toString().toCharArray();
+    }
+}
@@ -0,0 +1,279 @@
+package parser;
+
+import lexer.Token;
+import lexer.TokenType;
+import lexer.WholeNumber;
+import lexer.Word;
+import visitors.ASTVisitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+    Benchmark of the dispatch of the visitors on expression nodes: the instanceof chain used by the visitors (in the
+    same order as the chain in SemanticVisitor) against double dispatch through accept()
+    Both dispatch to the same small visit methods, over an array of nodes which is walked many times. Three visitor
+    classes are used in turn, like the XML, semantic and interpretation visitors of a compilation, so that the call
+    in accept() sees more than one visitor. Every input is measured a number of rounds, alternating between the two
+    dispatches, and the fastest round of each is printed.
+    This directory is a separate source root, it is not part of the compiler. Run from the project directory:
+        javac -d out $(find lexer parser semantics visitors benchmarks -name '*.java') Main.java
+        java -cp out parser.DispatchBenchmark [nodes] [rounds]
+ */
+public class DispatchBenchmark {
+    //Number of times the nodes are walked in a round
+    private static final int WALKS = 50;
+
+    //Expression classes which can be chosen for an input
+    private static final int BINARY_OPERATOR = 0;
+    private static final int FUNCTION_CALL = 1;
+    private static final int STRUCT_VARIABLE_SELECTOR = 2;
+    private static final int STRUCT_FUNCTION_SELECTOR = 3;
+    private static final int ARRAY_INDEX_IDENTIFIER = 4;
+    private static final int IDENTIFIER = 5;
+    private static final int LITERAL = 6;
+    private static final int UNARY = 7;
+    private static final int ARRAY_LITERAL = 8;
+
+    public static void main(String[] args) throws Exception {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 65536;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        System.out.println("Nodes: " + nodes + ", rounds: " + rounds + ", " + System.getProperty("java.vm.name")
+                + " " + System.getProperty("java.version"));
+        System.out.println(String.format("%-12s %14s %14s", "input", "instanceof", "accept"));
+
+        run("literals", expressions(nodes, new int[] {LITERAL}), rounds);
+        run("mixed", expressions(nodes, new int[] {LITERAL, IDENTIFIER, BINARY_OPERATOR, FUNCTION_CALL}), rounds);
+        run("all", expressions(nodes, new int[] {BINARY_OPERATOR, FUNCTION_CALL, STRUCT_VARIABLE_SELECTOR,
+                STRUCT_FUNCTION_SELECTOR, ARRAY_INDEX_IDENTIFIER, IDENTIFIER, LITERAL, UNARY, ARRAY_LITERAL}), rounds);
+    }
+
+    //Measures both dispatches on an input and prints the time per node of their fastest rounds
+    private static void run(String input, ASTExpression[] expressions, int rounds) throws Exception {
+        CountingVisitor[] visitors = {new CountingVisitor(), new OtherCountingVisitor(), new LastCountingVisitor()};
+        long bestInstanceOf = Long.MAX_VALUE;
+        long bestAccept = Long.MAX_VALUE;
+        long sum = 0;
+
+        for (int round = 0; round < rounds; round++) {
+            CountingVisitor visitor = visitors[round % visitors.length];
+
+            long start = System.nanoTime();
+            sum += walkInstanceOf(visitor, expressions);
+            bestInstanceOf = Math.min(bestInstanceOf, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sum -= walkAccept(visitor, expressions);
+            bestAccept = Math.min(bestAccept, System.nanoTime() - start);
+        }
+
+        //Both walks compute the same sum, which also keeps the JIT from removing them
+        if (sum != 0) {
+            throw new IllegalStateException("The dispatches visited different nodes");
+        }
+
+        double visits = (double) expressions.length * WALKS;
+        System.out.println(String.format("%-12s %11.2f ns %11.2f ns", input, bestInstanceOf / visits,
+                bestAccept / visits));
+    }
+
+    private static long walkInstanceOf(CountingVisitor visitor, ASTExpression[] expressions) {
+        visitor.sum = 0;
+
+        for (int walk = 0; walk < WALKS; walk++) {
+            for (ASTExpression expression : expressions) {
+                visitor.visit(expression);
+            }
+        }
+
+        return visitor.sum;
+    }
+
+    private static long walkAccept(CountingVisitor visitor, ASTExpression[] expressions) throws Exception {
+        visitor.sum = 0;
+
+        for (int walk = 0; walk < WALKS; walk++) {
+            for (ASTExpression expression : expressions) {
+                expression.accept(visitor);
+            }
+        }
+
+        return visitor.sum;
+    }
+
+    //Visitor adding up a field of every expression node, so that the casts are not removed
+    private static class CountingVisitor implements ASTVisitor {
+        long sum;
+
+        //The dispatch of the visitors (subclasses of ASTIdentifier have to come before it)
+        @Override
+        public void visit(ASTExpression astExpression) {
+            if (astExpression instanceof ASTBinaryOperator) {
+                visit((ASTBinaryOperator) astExpression);
+            } else if (astExpression instanceof ASTFunctionCall) {
+                visit((ASTFunctionCall) astExpression);
+            } else if (astExpression instanceof ASTStructVariableSelector) {
+                visit((ASTStructVariableSelector) astExpression);
+            } else if (astExpression instanceof ASTStructFunctionSelector) {
+                visit((ASTStructFunctionSelector) astExpression);
+            } else if (astExpression instanceof ASTArrayIndexIdentifier) {
+                visit((ASTArrayIndexIdentifier) astExpression);
+            } else if (astExpression instanceof ASTIdentifier) {
+                visit((ASTIdentifier) astExpression);
+            } else if (astExpression instanceof ASTLiteral) {
+                visit((ASTLiteral) astExpression);
+            } else if (astExpression instanceof ASTUnary) {
+                visit((ASTUnary) astExpression);
+            } else if (astExpression instanceof ASTArrayLiteral) {
+                visit((ASTArrayLiteral) astExpression);
+            } else {
+                throw new IllegalStateException("Unknown node while visiting expression");
+            }
+        }
+
+        @Override
+        public void visit(ASTBinaryOperator operator) {
+            sum += operator.operator.tokenType.ordinal();
+        }
+
+        @Override
+        public void visit(ASTFunctionCall astFunctionCall) {
+            sum += astFunctionCall.parameters.size() + 1;
+        }
+
+        @Override
+        public void visit(ASTStructVariableSelector astStructVariableSelector) {
+            sum += astStructVariableSelector.elementIdentifier.symbolId + 2;
+        }
+
+        @Override
+        public void visit(ASTStructFunctionSelector astStructFunctionSelector) {
+            sum += astStructFunctionSelector.functionCall.parameters.size() + 3;
+        }
+
+        @Override
+        public void visit(ASTArrayIndexIdentifier astArrayIndexIdentifier) {
+            sum += astArrayIndexIdentifier.symbolId + 4;
+        }
+
+        @Override
+        public void visit(ASTIdentifier astIdentifier) {
+            sum += astIdentifier.symbolId;
+        }
+
+        @Override
+        public void visit(ASTLiteral astLiteral) {
+            sum += astLiteral.token.tokenType.ordinal();
+        }
+
+        @Override
+        public void visit(ASTUnary astUnary) {
+            sum += astUnary.unaryType.ordinal() + 5;
+        }
+
+        @Override
+        public void visit(ASTArrayLiteral astArrayLiteral) {
+            sum += astArrayLiteral.arrayMembers.size() + 6;
+        }
+
+        //Statements are not measured
+        @Override
+        public void visit(ASTProgram astProgram) {
+        }
+
+        @Override
+        public void visit(ASTStatement statement) {
+        }
+
+        @Override
+        public void visit(ASTAssignment astAssignment) {
+        }
+
+        @Override
+        public void visit(ASTBlock astBlock) {
+        }
+
+        @Override
+        public void visit(ASTFor astFor) {
+        }
+
+        @Override
+        public void visit(ASTFunctionDeclaration astFunctionDeclaration) {
+        }
+
+        @Override
+        public void visit(ASTIf astIf) {
+        }
+
+        @Override
+        public void visit(ASTPrint astPrint) {
+        }
+
+        @Override
+        public void visit(ASTReturn astReturn) {
+        }
+
+        @Override
+        public void visit(ASTVariableDeclaration astVariableDeclaration) {
+        }
+
+        @Override
+        public void visit(ASTWhile astWhile) {
+        }
+
+        @Override
+        public void visit(ASTStruct astStruct) {
+        }
+    }
+
+    //Further visitor classes, so that the visit calls in accept() and in the walks see several receiver classes
+    private static class OtherCountingVisitor extends CountingVisitor {
+    }
+
+    private static class LastCountingVisitor extends CountingVisitor {
+    }
+
+    //Creates nodes of random classes among the given ones (the same nodes on every run)
+    private static ASTExpression[] expressions(int count, int[] classes) {
+        Random random = new Random(42);
+        ASTExpression[] expressions = new ASTExpression[count];
+
+        for (int i = 0; i < count; i++) {
+            expressions[i] = expression(classes[random.nextInt(classes.length)], random);
+        }
+
+        return expressions;
+    }
+
+    private static ASTExpression expression(int expressionClass, Random random) {
+        ASTLiteral literal = new ASTLiteral(new WholeNumber(random.nextInt(100)));
+        ASTIdentifier identifier = new ASTIdentifier(new Word("x" + random.nextInt(100), TokenType.IDENTIFIER,
+                random.nextInt(100)));
+        ASTFunctionCall functionCall = new ASTFunctionCall(identifier, new ArrayList<>(Arrays.asList(literal)));
+
+        switch (expressionClass) {
+            case BINARY_OPERATOR:
+                return new ASTBinaryOperator(literal, identifier, Token.of(TokenType.ADD));
+            case FUNCTION_CALL:
+                return functionCall;
+            case STRUCT_VARIABLE_SELECTOR:
+                return new ASTStructVariableSelector(identifier, identifier);
+            case STRUCT_FUNCTION_SELECTOR:
+                return new ASTStructFunctionSelector(identifier, functionCall);
+            case ARRAY_INDEX_IDENTIFIER:
+                return new ASTArrayIndexIdentifier(identifier, literal);
+            case IDENTIFIER:
+                return identifier;
+            case LITERAL:
+                return literal;
+            case UNARY:
+                return new ASTUnary(TokenType.SUB, literal);
+            case ARRAY_LITERAL:
+                return new ASTArrayLiteral(new ArrayList<>(Arrays.asList(literal)));
+            default:
+                throw new IllegalArgumentException("Unknown expression class " + expressionClass);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package lexer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+    Directory of cache entries named after the source they were made from, used by TokenCache and ASTCache
+    Entries are named after the SHA-256 hash of the source bytes (and the charset used to decode them). An entry
+    starts with a header (magic number, format version, fingerprint of the code which wrote it, source length, body
+    length and CRC32 of the body) followed by the body. Entries written by other code, or which are damaged, are
+    ignored and deleted. When the directory grows over its size cap, the least recently used entries are deleted.
+ */
+public class CacheDirectory {
+    private static final int HEADER_SIZE = 6 * 4;
+
+    private final Path directory;
+    private final long maxSize;
+    private final String extension;
+    private final int magic;
+    private final int formatVersion;
+
+    /**
+     * Uses (and creates if needed) a cache directory, deleting entries if it is over the size cap
+     * @param directory path of the cache directory
+     * @param maxSize maximum number of bytes kept in the directory (for entries with this extension)
+     * @param extension file extension of the entries
+     * @param magic number at the start of every entry
+     * @param formatVersion version of the layout of the body
+     */
+    public CacheDirectory(String directory, long maxSize, String extension, int magic, int formatVersion) throws IOException {
+        this.directory = Paths.get(directory);
+        this.maxSize = maxSize;
+        this.extension = extension;
+        this.magic = magic;
+        this.formatVersion = formatVersion;
+        Files.createDirectories(this.directory);
+        evict();
+    }
+
+    /**
+     * Gets the entry of a source (which may not exist)
+     * @param bytes bytes of the source file
+     * @return path of the entry
+     */
+    public Path entry(byte[] bytes) {
+        return directory.resolve(key(bytes).concat(extension));
+    }
+
+    /**
+     * Reads an entry with a single read
+     * @param entry path of the entry
+     * @param fingerprint fingerprint which the entry has to be written with
+     * @param sourceLength length of the source, to check against the entry
+     * @return buffer positioned at the start of the body, null when the entry is missing, out of date or damaged
+     */
+    public ByteBuffer read(Path entry, int fingerprint, int sourceLength) {
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer;
+
+            try (FileInputStream inputStream = new FileInputStream(entry.toFile());
+                 FileChannel channel = inputStream.getChannel()) {
+                buffer = ByteBuffer.allocate((int) channel.size());
+
+                while (buffer.hasRemaining() && channel.read(buffer) != -1);
+            }
+
+            buffer.flip();
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != magic || buffer.getInt() != formatVersion
+                    || buffer.getInt() != fingerprint || buffer.getInt() != sourceLength
+                    || buffer.getInt() != buffer.remaining() - 4) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+
+            int checksum = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+
+            if ((int) crc.getValue() != checksum) {
+                Files.deleteIfExists(entry);
+                return null;
+            }
+
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes an entry whose body could not be read
+     * @param entry path of the entry
+     */
+    public void discard(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            //Replaced by the next write anyway
+        }
+    }
+
+    /**
+     * Marks an entry as recently used for eviction
+     * @param entry path of the entry
+     */
+    public void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            //Only makes the entry more likely to be evicted
+        }
+    }
+
+    /**
+     * Writes an entry to a temporary file first, so that other processes never read a partly written entry,
+     * then deletes the least recently used entries if the directory is over its size cap
+     * @param entry path of the entry
+     * @param fingerprint fingerprint of the code writing the entry
+     * @param sourceLength length of the source
+     * @param bodySize exact number of bytes written by body
+     * @param body writes the body into the buffer it is given
+     */
+    public void write(Path entry, int fingerprint, int sourceLength, int bodySize, Consumer<ByteBuffer> body) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+
+        buffer.putInt(magic);
+        buffer.putInt(formatVersion);
+        buffer.putInt(fingerprint);
+        buffer.putInt(sourceLength);
+        buffer.putInt(bodySize);
+        buffer.putInt(0);
+        body.accept(buffer);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_SIZE, bodySize);
+        buffer.putInt(HEADER_SIZE - 4, (int) crc.getValue());
+
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+
+        try {
+            Files.write(temporary, buffer.array());
+            Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    //Deletes the least recently used entries until the directory is within its size cap
+    private void evict() throws IOException {
+        List<Path> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*".concat(extension))) {
+            for (Path entry : stream) {
+                entries.add(entry);
+            }
+        }
+
+        List<FileTime> usedTimes = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        long totalSize = 0;
+
+        for (Path entry : entries) {
+            try {
+                usedTimes.add(Files.getLastModifiedTime(entry));
+                sizes.add(Files.size(entry));
+            } catch (NoSuchFileException e) {
+                //Deleted by another process in the meantime
+                usedTimes.add(FileTime.fromMillis(0));
+                sizes.add(0L);
+            }
+
+            totalSize += sizes.get(sizes.size() - 1);
+        }
+
+        while (totalSize > maxSize && !entries.isEmpty()) {
+            int oldest = 0;
+
+            for (int i = 1; i < entries.size(); i++) {
+                if (usedTimes.get(i).compareTo(usedTimes.get(oldest)) < 0) {
+                    oldest = i;
+                }
+            }
+
+            Files.deleteIfExists(entries.remove(oldest));
+            usedTimes.remove(oldest);
+            totalSize -= sizes.remove(oldest);
+        }
+    }
+
+    //Name of the entry of a source: SHA-256 hash of the charset used to decode it and of its bytes
+    private static String key(byte[] bytes) {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(Charset.defaultCharset().name().getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) 0);
+
+        StringBuilder key = new StringBuilder();
+
+        for (byte hashByte : digest.digest(bytes)) {
+            key.append(Character.forDigit((hashByte >> 4) & 0xF, 16)).append(Character.forDigit(hashByte & 0xF, 16));
+        }
+
+        return key.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package lexer;
+
+import java.util.Arrays;
+
+/*
+    Token stream of an edited source, made of ranges (chunks) of other token streams which are never changed
+    An edit only lexes the tokens which changed into a new stream, and shares the tokens before and after them with
+    the stream before the edit. The tokens moved by an edit are not updated either: every chunk keeps the amounts to
+    add to the offsets and line numbers of its tokens, so an edit costs the length of the text lexed again and the
+    number of chunks, and not the size of the source.
+ */
+class ChunkedTokenStream extends TokenStream {
+    //Stream of every chunk, and the index in it of the first token of the chunk
+    private final TokenStream[] chunkStreams;
+    private final int[] chunkFroms;
+
+    //Index of the first token of every chunk, followed by the number of tokens
+    private final int[] chunkStarts;
+
+    //Amounts added to the lexeme offsets and line numbers of the tokens of every chunk
+    private final int[] startShifts;
+    private final int[] lineShifts;
+
+    //Source of the stream
+    private final PieceTable text;
+
+    //Chunk of the last token read (tokens are mostly read in order)
+    private int lastChunk = 0;
+
+    private ChunkedTokenStream(SymbolInterner interner, TokenStream[] chunkStreams, int[] chunkFroms, int[] chunkStarts,
+                               int[] startShifts, int[] lineShifts, PieceTable text) {
+        super(null, interner, 0);
+        this.chunkStreams = chunkStreams;
+        this.chunkFroms = chunkFroms;
+        this.chunkStarts = chunkStarts;
+        this.startShifts = startShifts;
+        this.lineShifts = lineShifts;
+        this.text = text;
+    }
+
+    /**
+     * Gets a token stream as a chunked stream, without copying its tokens or its source
+     * @param tokens token stream from Lexer.tokenise() or from an earlier edit
+     * @return chunked stream with the same tokens
+     */
+    static ChunkedTokenStream of(TokenStream tokens) {
+        if (tokens instanceof ChunkedTokenStream) {
+            return (ChunkedTokenStream) tokens;
+        }
+
+        ChunkedTokenStream chunked = new ChunkedTokenStream(tokens.getInterner(), new TokenStream[] {tokens},
+                new int[] {0}, new int[] {0, tokens.size()}, new int[] {0}, new int[] {0}, tokens.text());
+        chunked.endLine = tokens.endLine;
+        chunked.sourceEnd = tokens.sourceEnd;
+
+        return chunked;
+    }
+
+    /**
+     * Creates the stream of an edited source, with a range of the tokens replaced by the tokens of another stream
+     * (this stream is not changed)
+     * @param from index of the first replaced token
+     * @param to index after the last replaced token
+     * @param lexed stream whose tokens replace the range
+     * @param lexedStartShift amount added to the lexeme offsets of the tokens of lexed
+     * @param startShift amount added to the lexeme offsets of the tokens after the range
+     * @param lineShift amount added to the line numbers of the tokens after the range
+     * @param text source after the edit
+     * @return token stream of the edited source (endLine and sourceEnd still have to be set)
+     */
+    ChunkedTokenStream replace(int from, int to, TokenStream lexed, int lexedStartShift, int startShift, int lineShift,
+                               PieceTable text) {
+        int chunks = chunkStreams.length;
+        TokenStream[] newStreams = new TokenStream[chunks + 2];
+        int[] newFroms = new int[chunks + 2];
+        int[] newStarts = new int[chunks + 3];
+        int[] newStartShifts = new int[chunks + 2];
+        int[] newLineShifts = new int[chunks + 2];
+        int count = 0;
+
+        //Chunks starting before the range (the last one is cut by the start of the next chunk)
+        for (int chunk = 0; chunk < chunks && chunkStarts[chunk] < from; chunk++) {
+            newStreams[count] = chunkStreams[chunk];
+            newFroms[count] = chunkFroms[chunk];
+            newStarts[count] = chunkStarts[chunk];
+            newStartShifts[count] = startShifts[chunk];
+            newLineShifts[count] = lineShifts[chunk];
+            count++;
+        }
+
+        if (lexed.size() > 0) {
+            newStreams[count] = lexed;
+            newFroms[count] = 0;
+            newStarts[count] = from;
+            newStartShifts[count] = lexedStartShift;
+            newLineShifts[count] = 0;
+            count++;
+        }
+
+        int tokenShift = lexed.size() - (to - from);
+
+        //Chunks ending after the range (the first one is cut at its end), moved by the edit
+        for (int chunk = to < size() ? chunk(to) : chunks; chunk < chunks; chunk++) {
+            int start = Math.max(chunkStarts[chunk], to);
+            newStreams[count] = chunkStreams[chunk];
+            newFroms[count] = chunkFroms[chunk] + start - chunkStarts[chunk];
+            newStarts[count] = start + tokenShift;
+            newStartShifts[count] = startShifts[chunk] + startShift;
+            newLineShifts[count] = lineShifts[chunk] + lineShift;
+            count++;
+        }
+
+        newStarts[count] = size() + tokenShift;
+
+        return new ChunkedTokenStream(getInterner(), Arrays.copyOf(newStreams, count), Arrays.copyOf(newFroms, count),
+                Arrays.copyOf(newStarts, count + 1), Arrays.copyOf(newStartShifts, count),
+                Arrays.copyOf(newLineShifts, count), text);
+    }
+
+    //Gets the chunk containing a token (the last chunk starting at or before it)
+    private int chunk(int index) {
+        int chunk = lastChunk;
+
+        if (index >= chunkStarts[chunk] && index < chunkStarts[chunk + 1]) {
+            return chunk;
+        }
+
+        int low = 0;
+        int high = chunkStreams.length - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (chunkStarts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        lastChunk = low;
+        return low;
+    }
+
+    //Gets the index of a token in the stream of its chunk
+    private int indexInChunk(int chunk, int index) {
+        return chunkFroms[chunk] + index - chunkStarts[chunk];
+    }
+
+    @Override
+    public void add(TokenType tokenType, int start, int line, int payload) {
+        throw new UnsupportedOperationException("Tokens cannot be added to the token stream of an edited source");
+    }
+
+    @Override
+    public int size() {
+        return chunkStarts[chunkStreams.length];
+    }
+
+    /**
+     * Gets the source as a single array, which is copied from the pieces of the edited source
+     * @return source characters
+     */
+    @Override
+    public char[] getSource() {
+        return text.toCharArray();
+    }
+
+    @Override
+    PieceTable text() {
+        return text;
+    }
+
+    @Override
+    public TokenType tokenType(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].tokenType(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public int start(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].start(indexInChunk(chunk, index)) + startShifts[chunk];
+    }
+
+    @Override
+    public int payload(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].payload(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public int intValue(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].intValue(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public float floatValue(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].floatValue(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public int line(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].line(indexInChunk(chunk, index)) + lineShifts[chunk];
+    }
+
+    @Override
+    public int length(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].length(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public boolean lexemeEquals(int index, String text) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].lexemeEquals(indexInChunk(chunk, index), text);
+    }
+
+    @Override
+    public String lexeme(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].lexeme(indexInChunk(chunk, index));
+    }
+
+    @Override
+    public Token token(int index) {
+        int chunk = chunk(index);
+        return chunkStreams[chunk].token(indexInChunk(chunk, index));
+    }
+}
@@ -0,0 +1,94 @@
+package lexer;
+
+/*
+    Generated by DfaGenerator from the transition table and accepting states in States, do not edit
+    28 states share 16 distinct rows of 18 character categories
+ */
+final class CompressedDfa {
+    //Offset of the row of every state in TRANSITIONS
+    static final int[] ROW_OFFSETS = {
+        0, //START
+        18, //STRING1
+        36, //STRING2
+        54, //IDENTIFIER
+        36, //SYMBOL
+        36, //ADD
+        36, //SUB
+        36, //MUL
+        72, //DIV
+        90, //INTEGER
+        108, //FLOAT1
+        108, //FLOAT2
+        126, //LT
+        36, //LTE
+        144, //NOT
+        36, //NE
+        162, //GT
+        36, //GTE
+        180, //EQ1
+        36, //EQ2
+        198, //COMMENT1
+        36, //COMMENT2
+        216, //COMMENTM1
+        234, //COMMENTM2
+        36, //COMMENTM3
+        252, //CHAR1
+        270, //CHAR2
+        36 //CHAR3
+    };
+
+    //Next state for a row offset plus a character category (-1 is ERROR)
+    static final byte[] TRANSITIONS = {
+        9, 3, 1, 4, 5, 6, 8, 7, 4, 3, 18, 12, 16, 14, 4, 25, -1, -1,
+        1, 1, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, 1, 1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        3, 3, -1, -1, -1, -1, -1, -1, -1, 3, -1, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1, -1, 20, 22, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        9, -1, -1, 10, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        11, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 13, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 15, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 17, -1, -1, -1, -1, -1, -1, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 19, -1, -1, -1, -1, -1, -1, -1,
+        20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 21, 20, 20, 20,
+        22, 22, 22, 22, 22, 22, 22, 23, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22,
+        22, 22, 22, 22, 22, 22, 24, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22,
+        26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, -1, 26, 26, -1,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 27, -1, -1
+    };
+
+    //Whether every state is accepting
+    static final boolean[] ACCEPTING = {
+        false, //START
+        false, //STRING1
+        true, //STRING2
+        true, //IDENTIFIER
+        true, //SYMBOL
+        true, //ADD
+        true, //SUB
+        true, //MUL
+        true, //DIV
+        true, //INTEGER
+        false, //FLOAT1
+        true, //FLOAT2
+        true, //LT
+        true, //LTE
+        false, //NOT
+        true, //NE
+        true, //GT
+        true, //GTE
+        true, //EQ1
+        true, //EQ2
+        false, //COMMENT1
+        true, //COMMENT2
+        false, //COMMENTM1
+        true, //COMMENTM2
+        true, //COMMENTM3
+        false, //CHAR1
+        false, //CHAR2
+        true //CHAR3
+    };
+
+    private CompressedDfa() {
+    }
+}
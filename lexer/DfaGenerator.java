@@ -0,0 +1,264 @@
+package lexer;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Build-time generator of CompressedDfa, the transition table used by the lexer
+    The table in States is flattened into a single byte array, where states with the same transitions share one
+    row, so that each step of the lexer is two lookups in small primitive arrays.
+    Run after changing the states or the table (from the directory containing the lexer package, with the
+    compiled classes on the class path):
+        java lexer.DfaGenerator lexer/CompressedDfa.java
+    The lexer can then be checked against ReferenceLexer, the table-driven lexer it replaced, on a corpus of programs
+    (the tokens up to the first lexical error are compared, and the first difference in every program is printed):
+        java lexer.DfaGenerator --check program1.txt program2.txt ...
+ */
+public class DfaGenerator {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--check")) {
+            check(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        String outputPath = args.length > 0 ? args[0] : "lexer/CompressedDfa.java";
+        int[][] table = States.transitionTable;
+        int categories = table[0].length;
+
+        //Keeps one copy of every distinct row
+        List<int[]> rows = new ArrayList<>();
+        int[] rowOffsets = new int[table.length];
+
+        for (int state = 0; state < table.length; state++) {
+            int row = indexOfRow(rows, table[state]);
+
+            if (row == -1) {
+                row = rows.size();
+                rows.add(table[state]);
+            }
+
+            rowOffsets[state] = row * categories;
+        }
+
+        byte[] transitions = new byte[rows.size() * categories];
+
+        for (int row = 0; row < rows.size(); row++) {
+            for (int category = 0; category < categories; category++) {
+                int nextState = rows.get(row)[category];
+
+                if (nextState != (byte) nextState) {
+                    throw new IllegalStateException("State " + nextState + " does not fit in a byte");
+                }
+
+                transitions[row * categories + category] = (byte) nextState;
+            }
+        }
+
+        boolean[] accepting = new boolean[table.length];
+
+        for (int acceptingState : States.getAcceptingStates()) {
+            accepting[acceptingState] = true;
+        }
+
+        //Checks the compressed table against the original one before writing it
+        for (int state = 0; state < table.length; state++) {
+            for (int category = 0; category < categories; category++) {
+                if (transitions[rowOffsets[state] + category] != table[state][category]) {
+                    throw new IllegalStateException("Compressed table differs in state " + state + ", category " + category);
+                }
+            }
+        }
+
+        String[] stateNames = stateNames(table.length);
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.US_ASCII))) {
+            writer.println("package lexer;");
+            writer.println();
+            writer.println("/*");
+            writer.println("    Generated by DfaGenerator from the transition table and accepting states in States, do not edit");
+            writer.println("    " + table.length + " states share " + rows.size() + " distinct rows of " + categories + " character categories");
+            writer.println(" */");
+            writer.println("final class CompressedDfa {");
+            writer.println("    //Offset of the row of every state in TRANSITIONS");
+            writer.println("    static final int[] ROW_OFFSETS = {");
+
+            for (int state = 0; state < table.length; state++) {
+                writer.println("        " + rowOffsets[state] + (state < table.length - 1 ? "," : "") + " //" + stateNames[state]);
+            }
+
+            writer.println("    };");
+            writer.println();
+            writer.println("    //Next state for a row offset plus a character category (" + States.ERROR + " is ERROR)");
+            writer.println("    static final byte[] TRANSITIONS = {");
+
+            for (int row = 0; row < rows.size(); row++) {
+                StringBuilder line = new StringBuilder("        ");
+
+                for (int category = 0; category < categories; category++) {
+                    line.append(transitions[row * categories + category]);
+
+                    if (row < rows.size() - 1 || category < categories - 1) {
+                        line.append(category < categories - 1 ? ", " : ",");
+                    }
+                }
+
+                writer.println(line);
+            }
+
+            writer.println("    };");
+            writer.println();
+            writer.println("    //Whether every state is accepting");
+            writer.println("    static final boolean[] ACCEPTING = {");
+
+            for (int state = 0; state < table.length; state++) {
+                writer.println("        " + accepting[state] + (state < table.length - 1 ? "," : "") + " //" + stateNames[state]);
+            }
+
+            writer.println("    };");
+            writer.println();
+            writer.println("    private CompressedDfa() {");
+            writer.println("    }");
+            writer.println("}");
+        }
+    }
+
+    /**
+     * Lexes every program of a corpus with Lexer and with ReferenceLexer, and compares the tokens
+     * Exits with status 1 if the tokens of any program differ.
+     * @param programPaths paths of the programs
+     */
+    private static void check(String[] programPaths) throws IOException {
+        int differences = 0;
+
+        for (String programPath : programPaths) {
+            CharBuffer source = Lexer.readFile(programPath);
+            char[] characters = new char[source.remaining()];
+            source.get(characters);
+
+            List<String> tokens = dumpTokens(characters);
+            List<String> referenceTokens = dumpReferenceTokens(characters);
+            int difference = 0;
+
+            while (difference < tokens.size() && difference < referenceTokens.size()
+                    && tokens.get(difference).equals(referenceTokens.get(difference))) {
+                difference++;
+            }
+
+            if (difference == tokens.size() && difference == referenceTokens.size()) {
+                System.out.println(programPath + ": " + tokens.size() + " tokens and errors match");
+            } else {
+                differences++;
+                System.out.println(programPath + ": tokens differ at token " + difference);
+                System.out.println("    Lexer:          " + (difference < tokens.size()
+                        ? tokens.get(difference) : "end of file"));
+                System.out.println("    ReferenceLexer: " + (difference < referenceTokens.size()
+                        ? referenceTokens.get(difference) : "end of file"));
+            }
+        }
+
+        System.out.println(differences == 0 ? "All " + programPaths.length + " programs match"
+                : differences + " of " + programPaths.length + " programs differ");
+
+        if (differences > 0) {
+            System.exit(1);
+        }
+    }
+
+    //Lexes a program into a packed token stream (as the compiler does), one line per token and then the error if any
+    private static List<String> dumpTokens(char[] characters) {
+        List<String> dump = new ArrayList<>();
+        Lexer lexer = new Lexer(CharBuffer.wrap(characters));
+        TokenStream tokens = new TokenStream(characters, lexer.getInterner());
+
+        try {
+            while (lexer.tokeniseNext(tokens)) {
+                //Every call adds at most one token
+            }
+        } catch (Exception e) {
+            dump.add("error in line " + lexer.lineNumber + ", character " + lexer.characterInLine);
+        }
+
+        for (int i = 0; i < tokens.size(); i++) {
+            dump.add(i, describeToken(tokens.token(i), tokens.line(i)));
+        }
+
+        return dump;
+    }
+
+    //Lexes a program with the reference lexer, one line per token and then the error if any
+    private static List<String> dumpReferenceTokens(char[] characters) {
+        List<String> dump = new ArrayList<>();
+        ReferenceLexer lexer = new ReferenceLexer(new CharArrayReader(characters));
+
+        try {
+            Token token;
+
+            while ((token = lexer.getNextToken()) != null) {
+                dump.add(describeToken(token, lexer.lineNumber));
+            }
+        } catch (Exception e) {
+            dump.add("error in line " + lexer.lineNumber + ", character " + lexer.characterInLine);
+        }
+
+        return dump;
+    }
+
+    //Describes a token with its type, value and line (floats by their bits, so that any rounding difference shows)
+    private static String describeToken(Token token, int line) {
+        String value;
+
+        if (token instanceof WholeNumber) {
+            value = " " + ((WholeNumber) token).value;
+        } else if (token instanceof Real) {
+            value = " " + ((Real) token).value + " (0x" + Integer.toHexString(Float.floatToIntBits(((Real) token).value)) + ")";
+        } else if (token instanceof Word) {
+            value = " '" + ((Word) token).lexeme + "'";
+        } else {
+            value = "";
+        }
+
+        return token.tokenType + value + " in line " + line;
+    }
+
+    //Finds an identical row among the rows kept so far, -1 if there is none
+    private static int indexOfRow(List<int[]> rows, int[] row) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (Arrays.equals(rows.get(i), row)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    //Gets the names of the state constants in States, used as comments in the generated source
+    private static String[] stateNames(int stateCount) {
+        String[] names = new String[stateCount];
+
+        for (Field field : States.class.getDeclaredFields()) {
+            if (field.getType() == int.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    int state = field.getInt(null);
+
+                    if (state >= 0 && state < stateCount) {
+                        names[state] = field.getName();
+                    }
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        return names;
+    }
+}
@@ -0,0 +1,19 @@
+package lexer;
+
+//Class for errors which are recorded instead of stopping the compilation
+public class Diagnostic {
+    public final int lineNumber;
+    public final int characterInLine;
+    public final String message;
+
+    public Diagnostic(int lineNumber, int characterInLine, String message) {
+        this.lineNumber = lineNumber;
+        this.characterInLine = characterInLine;
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
@@ -0,0 +1,250 @@
+package lexer;
+
+import java.nio.CharBuffer;
+
+/*
+    Updates a packed token stream after an edit to its source, without lexing the whole source again
+    Lexing restarts at the beginning of a line which the old stream shows was between two tokens (outside any
+    comment), and stops as soon as a new token matches an old token after the edit. The old tokens from there on
+    are reused, moved by the change in length and line count of the edit.
+    Neither the source nor the tokens are copied: the edited source is a piece table sharing the characters of the
+    old source, and the new stream is a ChunkedTokenStream sharing the old tokens, with the move applied as they are
+    read. An edit therefore costs the text lexed again and the number of earlier edits, not the size of the source.
+ */
+public class IncrementalLexer {
+    //Number of characters after the edit which are lexed first (the window is doubled until the tokens match again)
+    private static final int WINDOW_MARGIN = 4096;
+
+    //Updated stream and the tokens which changed in it
+    public static class Result {
+        //Token stream of the edited source
+        public final TokenStream tokens;
+
+        //Index of the first token which is not the same as in the old stream
+        public final int firstChangedToken;
+
+        //End (exclusive) of the replaced tokens in the old stream
+        public final int oldEndToken;
+
+        //End (exclusive) of the replacing tokens in the new stream
+        public final int newEndToken;
+
+        private Result(TokenStream tokens, int firstChangedToken, int oldEndToken, int newEndToken) {
+            this.tokens = tokens;
+            this.firstChangedToken = firstChangedToken;
+            this.oldEndToken = oldEndToken;
+            this.newEndToken = newEndToken;
+        }
+    }
+
+    /**
+     * Applies an edit to the source of a token stream and lexes the part of it which could have changed
+     * The new stream shares the old stream's interner, so identifiers keep their ids, and the old stream is not changed
+     * @param previous token stream of the source before the edit (from Lexer.tokenise() or an earlier edit)
+     * @param offset offset of the edit in the source
+     * @param removedLength number of characters removed at offset
+     * @param insertedText text inserted at offset
+     * @return token stream of the edited source (the same as Lexer.tokenise() on it) and the changed token range
+     * @throws Exception the lexical error which Lexer.tokenise() would report on the edited source
+     */
+    public static Result relex(TokenStream previous, int offset, int removedLength, String insertedText) throws Exception {
+        ChunkedTokenStream oldTokens = ChunkedTokenStream.of(previous);
+        PieceTable oldText = oldTokens.text();
+        int oldEnd = previous.sourceEnd;
+
+        if (offset < 0 || removedLength < 0 || offset + removedLength > oldEnd) {
+            throw new IllegalArgumentException("Edit outside of the source: " + offset + ", " + removedLength);
+        }
+
+        int insertedLength = insertedText.length();
+        int shift = insertedLength - removedLength;
+        int lineShift = countNewlines(insertedText, 0, insertedLength) - countNewlines(oldText, offset, offset + removedLength);
+        int editEnd = offset + insertedLength;
+        int newEnd = oldEnd + shift;
+
+        //Finds where to restart lexing (restart is the index of the first token lexed again)
+        int restart = firstTokenFrom(oldTokens, offset);
+        int restartOffset = 0;
+        int restartLine = 1;
+
+        for (; restart > 0; restart--) {
+            int gapStart = end(oldTokens, restart - 1);
+            int gapEnd = Math.min(restart < oldTokens.size() ? oldTokens.start(restart) : oldEnd, offset);
+            int lineStart = -1;
+
+            //The line start has to be preceded by whitespace only, otherwise it could be inside a comment
+            for (int i = gapStart; i < gapEnd && isWhitespace(oldText.charAt(i)); i++) {
+                if (oldText.charAt(i) == '\n') {
+                    lineStart = i + 1;
+                }
+            }
+
+            if (lineStart != -1) {
+                /*
+                    The lexer read exactly one whitespace character after the token before the gap, so its line
+                    number counts the newlines up to that character
+                 */
+                restartOffset = lineStart;
+                restartLine = oldTokens.line(restart - 1) + countNewlines(oldText, gapStart + 1, lineStart);
+                break;
+            }
+        }
+
+        /*
+            Only a window of the edited source starting at the restart offset is copied and lexed, and the window is
+            made larger until lexing it gives a token matching an old token (or it reaches the end of the source)
+         */
+        int windowLength = Math.min(editEnd - restartOffset + WINDOW_MARGIN, newEnd - restartOffset);
+
+        while (true) {
+            char[] window = new char[windowLength];
+            int unchangedLength = windowLength - (editEnd - restartOffset);
+            oldText.getChars(restartOffset, offset, window, 0);
+            insertedText.getChars(0, insertedLength, window, offset - restartOffset);
+            oldText.getChars(offset + removedLength, offset + removedLength + unchangedLength, window, editEnd - restartOffset);
+
+            boolean isWholeSource = restartOffset + windowLength == newEnd;
+            TokenStream lexed = new TokenStream(window, previous.getInterner(), 64);
+            Lexer lexer = new Lexer(CharBuffer.wrap(window), previous.getInterner());
+            lexer.lineNumber = restartLine;
+
+            int oldIndex = restart;
+            int checkedTokens = 0;
+            int synchronisedToken = -1;
+
+            try {
+                while (lexer.tokeniseNext(lexed)) {
+                    int newIndex = lexed.size() - 1;
+
+                    //Nothing is added for whitespace at the end of the file, and tokens in the edit cannot match
+                    if (newIndex < checkedTokens || restartOffset + lexed.start(newIndex) < editEnd) {
+                        continue;
+                    }
+
+                    checkedTokens = newIndex + 1;
+
+                    //Finds the old token at the same place in the unchanged text after the edit
+                    int oldStart = restartOffset + lexed.start(newIndex) - shift;
+
+                    while (oldIndex < oldTokens.size() && oldTokens.start(oldIndex) < oldStart) {
+                        oldIndex++;
+                    }
+
+                    /*
+                        Once a token ends right before a whitespace character the lexer has nothing buffered but that
+                        character, so when it also matches the old token, lexing the rest would give the old tokens
+                        again
+                     */
+                    if (oldIndex < oldTokens.size()
+                            && isSameToken(oldTokens, oldIndex, lexed, newIndex, shift - restartOffset, lineShift)) {
+                        int tokenEnd = end(lexed, newIndex);
+
+                        if (tokenEnd < windowLength && isWhitespace(window[tokenEnd])) {
+                            synchronisedToken = oldIndex;
+                            break;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                //An error at the end of the window can come from a token which continues after it
+                if (isWholeSource || !lexer.EOF) {
+                    throw e;
+                }
+            }
+
+            if (synchronisedToken == -1 && !isWholeSource) {
+                windowLength = Math.min(windowLength * 2, newEnd - restartOffset);
+                continue;
+            }
+
+            //The window becomes a piece of the edited source
+            PieceTable text = oldText.replace(restartOffset, restartOffset + windowLength - shift, window);
+            int oldEndToken = synchronisedToken == -1 ? oldTokens.size() : synchronisedToken;
+            int replacedEnd = synchronisedToken == -1 ? oldTokens.size() : synchronisedToken + 1;
+            int newEndToken = restart + lexed.size() - (replacedEnd - oldEndToken);
+
+            ChunkedTokenStream tokens = oldTokens.replace(restart, replacedEnd, lexed, restartOffset, shift, lineShift, text);
+            tokens.endLine = synchronisedToken == -1 ? lexer.lineNumber : previous.endLine + lineShift;
+            tokens.sourceEnd = newEnd;
+
+            //Narrows the range to the tokens which really differ
+            int firstChangedToken = restart;
+
+            while (firstChangedToken < oldEndToken && firstChangedToken < newEndToken
+                    && end(oldTokens, firstChangedToken) <= offset
+                    && isSameToken(oldTokens, firstChangedToken, tokens, firstChangedToken, 0, 0)) {
+                firstChangedToken++;
+            }
+
+            while (oldEndToken > firstChangedToken && newEndToken > firstChangedToken
+                    && tokens.start(newEndToken - 1) >= editEnd
+                    && isSameToken(oldTokens, oldEndToken - 1, tokens, newEndToken - 1, shift, lineShift)) {
+                oldEndToken--;
+                newEndToken--;
+            }
+
+            return new Result(tokens, firstChangedToken, oldEndToken, newEndToken);
+        }
+    }
+
+    //Gets the index of the first token starting at or after offset
+    private static int firstTokenFrom(TokenStream tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (tokens.start(middle) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    //Compares two tokens, the second one moved by the given offset and line shifts
+    private static boolean isSameToken(TokenStream first, int firstIndex, TokenStream second, int secondIndex, int shift, int lineShift) {
+        return first.tokenType(firstIndex) == second.tokenType(secondIndex)
+                && first.payload(firstIndex) == second.payload(secondIndex)
+                && first.start(firstIndex) + shift == second.start(secondIndex)
+                && first.length(firstIndex) == second.length(secondIndex)
+                && first.line(firstIndex) + lineShift == second.line(secondIndex);
+    }
+
+    //Offset right after the lexeme of a token
+    private static int end(TokenStream tokens, int index) {
+        return tokens.start(index) + tokens.length(index);
+    }
+
+    //Characters which end every token and are skipped between tokens (tabs are read as spaces)
+    private static boolean isWhitespace(char character) {
+        return character == ' ' || character == '\t' || character == '\r' || character == '\n';
+    }
+
+    private static int countNewlines(CharSequence characters, int start, int end) {
+        int newlines = 0;
+
+        for (int i = start; i < end; i++) {
+            if (characters.charAt(i) == '\n') {
+                newlines++;
+            }
+        }
+
+        return newlines;
+    }
+
+    private static int countNewlines(PieceTable text, int start, int end) {
+        int newlines = 0;
+
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                newlines++;
+            }
+        }
+
+        return newlines;
+    }
+}
@@ -1,150 +1,191 @@
 package lexer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.*;
 import static lexer.States.*;
 
-public class Lexer {
+public class Lexer implements TokenSource {
     public int lineNumber;
     public int characterInLine;
-    private final Reader reader;
-    private final Stack<Integer> stack;
-    private final HashSet<Integer> acceptingStates;
-    private final ArrayDeque<Character> characterBuffer;
-    private final HashMap<String, Word> reservedWords;
     public boolean EOF = false;
     private int state;
 
-    //Table containing DFA transitions
-    private final int[][] transitionTable = {
-        {INTEGER,IDENTIFIER,STRING1,SYMBOL,ADD,SUB,DIV,MUL,SYMBOL,IDENTIFIER,EQ1,LT,GT,NOT,SYMBOL,CHAR1,ERROR,ERROR},
-        {STRING1,STRING1,STRING2,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,ERROR,STRING1,STRING1,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {IDENTIFIER,IDENTIFIER,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,IDENTIFIER,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,COMMENT1,COMMENTM1,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {INTEGER,ERROR,ERROR,FLOAT1,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {FLOAT2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {FLOAT2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,LTE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,NE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,GTE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,EQ2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT2,COMMENT1,COMMENT1,COMMENT1},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM2,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1},
-        {COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM3,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
-        {CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,ERROR,CHAR2,CHAR2,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,CHAR3,ERROR,ERROR},
-        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR}
+    //Identifier table of the compilation, identifiers are interned as they are lexed
+    private final SymbolInterner interner;
+
+    //Whole program source, the DFA reads it by index instead of calling a reader per character
+    private final char[] source;
+    private final int sourceLength;
+    private int sourcePosition;
+
+    //Files smaller than this are read with a single read, larger ones are memory-mapped
+    private static final int MAPPING_THRESHOLD = 64 * 1024;
+
+    //Rollback stack of visited states (plain ints so scanning does not box)
+    private int[] stack = new int[64];
+    private int stackSize;
+
+    //Characters given back during rollback, read again before the file (last in, first out)
+    private char[] characterBuffer = new char[64];
+    private int characterBufferSize;
+
+    //Characters of the lexeme being scanned, only turned into a String when a token needs it
+    private char[] lexeme = new char[256];
+    private int lexemeLength;
+
+    //When recovering, lexical errors are recorded instead of thrown and lexing goes on after the bad lexeme
+    private boolean recovering = false;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    //Version of the lexer's output, increase it when a change to the lexer code changes the tokens of some source
+    static final int VERSION = 1;
+
+    //The keywords of the language (findReservedWord depends on this order)
+    static final Word[] reservedWordList = {
+        Word.OR, Word.AND, Word.TRUE, Word.FALSE, Word.LET, Word.PRINT, Word.RETURN, Word.IF, Word.ELSE, Word.FOR,
+        Word.WHILE, Word.NOT, Word.STRUCT, Type.BOOL, Type.FLOAT, Type.INTEGER, Type.STRING, Type.CHAR, Type.AUTO
     };
 
-    //Initialises the lexer
-    public Lexer(String programPath) throws FileNotFoundException {
+    //Identifies the lexer's behaviour, changes with the version, the DFA, the character categories or the keywords
+    public static int fingerprint() {
+        int fingerprint = VERSION;
+        fingerprint = 31 * fingerprint + Arrays.hashCode(CompressedDfa.ROW_OFFSETS);
+        fingerprint = 31 * fingerprint + Arrays.hashCode(CompressedDfa.TRANSITIONS);
+        fingerprint = 31 * fingerprint + Arrays.hashCode(CompressedDfa.ACCEPTING);
+        fingerprint = 31 * fingerprint + Arrays.hashCode(asciiCategories);
+
+        for (Word reservedWord : reservedWordList) {
+            fingerprint = 31 * fingerprint + reservedWord.lexeme.hashCode();
+            fingerprint = 31 * fingerprint + reservedWord.tokenType.ordinal();
+        }
+
+        return fingerprint;
+    }
+
+    //Initialises the lexer with the program stored in the file at programPath
+    public Lexer(String programPath) throws IOException {
+        this(readFile(programPath));
+    }
+
+    //Initialises the lexer with a program which is already in memory (source is read from its position to its limit)
+    public Lexer(CharBuffer source) {
+        this(source, new SymbolInterner());
+    }
+
+    //Initialises the lexer with a program in memory, interning identifiers in a table shared with other lexers
+    public Lexer(CharBuffer source, SymbolInterner interner) {
+        this.interner = interner;
         lineNumber = 1;
         characterInLine = 0;
 
-        reader = new FileReader(programPath);
-
-        stack = new Stack<>();
-        characterBuffer = new ArrayDeque<>();
-        acceptingStates = new HashSet<>(getAcceptingStates());
-        reservedWords = new HashMap<>();
-
-        //Reserves the keywords
-        put(Word.OR);
-        put(Word.AND);
-        put(Word.TRUE);
-        put(Word.FALSE);
-        put(Word.LET);
-        put(Word.PRINT);
-        put(Word.RETURN);
-        put(Word.IF);
-        put(Word.ELSE);
-        put(Word.FOR);
-        put(Word.WHILE);
-        put(Word.NOT);
-        put(Word.STRUCT);
-        put(Type.BOOL);
-        put(Type.FLOAT);
-        put(Type.INTEGER);
-        put(Type.STRING);
-        put(Type.CHAR);
-        put(Type.AUTO);
-    }
-
-    //Utility method to add strings to map of keywords
-    private void put(Word word) {
-        reservedWords.put(word.lexeme, word);
+        if (source.hasArray()) {
+            this.source = source.array();
+            sourcePosition = source.arrayOffset() + source.position();
+            sourceLength = source.arrayOffset() + source.limit();
+        } else {
+            this.source = new char[source.remaining()];
+            source.duplicate().get(this.source);
+            sourcePosition = 0;
+            sourceLength = this.source.length;
+        }
+    }
+
+    //Creates a lexer for program text held in a string
+    public static Lexer fromString(String program) {
+        return new Lexer(CharBuffer.wrap(program.toCharArray()));
     }
 
-    //Gets the next character of the file
-    public char getNextChar() throws IOException {
-        int nextCharacter;
+    //Creates a lexer for program bytes held in memory (decoded with the platform charset, like the file constructor)
+    public static Lexer fromBytes(byte[] program) {
+        return new Lexer(Charset.defaultCharset().decode(ByteBuffer.wrap(program)));
+    }
+
+    //Reads a whole file in one go (memory-mapping large files) and decodes it into a single character buffer
+    static CharBuffer readFile(String programPath) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(programPath);
+             FileChannel channel = inputStream.getChannel()) {
+            long size = channel.size();
+            ByteBuffer bytes;
+
+            if (size < MAPPING_THRESHOLD) {
+                bytes = ByteBuffer.allocate((int) size);
 
-        nextCharacter = reader.read();
+                while (bytes.hasRemaining() && channel.read(bytes) != -1);
 
-        //If the next character is the end of file, set EOf flag to true
-        if (nextCharacter == -1) {
+                bytes.flip();
+            } else {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            return Charset.defaultCharset().decode(bytes);
+        }
+    }
+
+    //Gets the next character of the file
+    public char getNextChar() {
+        char nextCharacter;
+
+        //If the end of the source is reached, set EOF flag to true
+        if (sourcePosition >= sourceLength) {
             EOF = true;
             return ' ';
         }
 
+        nextCharacter = source[sourcePosition++];
+
         //Newline adds 1 to the line number and resets the character in line counter
-        if ((char)nextCharacter == '\n') {
+        if (nextCharacter == '\n') {
             characterInLine = 0;
             lineNumber++;
         } else {
             //Tabs are replaced with spaces
-            if ((char) nextCharacter == '\t') {
+            if (nextCharacter == '\t') {
                 nextCharacter = ' ';
             }
 
             characterInLine++;
         }
 
-        return (char)nextCharacter;
+        return nextCharacter;
+    }
+
+    //Main table-driven lexer algorithm, returns the lexeme as a string ("$" on error)
+    public String getNextLexeme() {
+        if (scanLexeme()) {
+            return lexemeString();
+        } else {
+            return "$";
+        }
     }
 
-    //Main table-driven lexer algorithm
-    public String getNextLexeme() throws IOException {
+    //Scans the next lexeme into the lexeme buffer, returns false on a lexical error
+    private boolean scanLexeme() {
         //Initialisation phase
         int category;
         state = START;
 
-        StringBuilder lexeme = new StringBuilder();
-        stack.clear();
-        stack.push(BAD);
+        lexemeLength = 0;
+        stackSize = 0;
+        pushState(BAD);
 
         char nextCharacter;
-        int nextValue;
 
         //Scanning loop
         while(state != ERROR) {
             //If the character buffer is empty, read next character from file, otherwise take from buffer
-            if (characterBuffer.size() == 0) {
-                nextValue = getNextChar();
+            if (characterBufferSize == 0) {
+                nextCharacter = getNextChar();
 
-                //If the end of file is reached, returns the string in the current buffer
+                //If the end of file is reached, accepts the characters in the current buffer
                 if (EOF) {
-                    if (acceptingStates.contains(state) || state == START || state == COMMENT1 || state == COMMENTM1 || state == COMMENTM2) {
-                        return lexeme.toString();
-                    } else {
-                        return "$";
-                    }
+                    return isAccepting(state) || state == START || state == COMMENT1 || state == COMMENTM1 || state == COMMENTM2;
                 }
-
-                nextCharacter = (char) nextValue;
             } else {
-                nextCharacter = characterBuffer.removeLast();
+                nextCharacter = characterBuffer[--characterBufferSize];
             }
 
             //Ignores spaces, newlines and carriage
@@ -152,44 +193,78 @@ public class Lexer {
                 continue;
             }
 
-            lexeme.append(nextCharacter);
+            if (lexemeLength == lexeme.length) {
+                lexeme = Arrays.copyOf(lexeme, lexemeLength * 2);
+            }
+
+            lexeme[lexemeLength++] = nextCharacter;
 
-            if (acceptingStates.contains(state)) {
-                stack.clear();
+            if (isAccepting(state)) {
+                stackSize = 0;
             }
 
-            stack.push(state);
+            pushState(state);
             category = categoriseCharacter(nextCharacter);
-            state = transitionTable[state][category];
+            state = CompressedDfa.TRANSITIONS[CompressedDfa.ROW_OFFSETS[state] + category];
         }
 
         //Rollback loop
-        while (!acceptingStates.contains(state) && state != BAD) {
-            state = stack.pop();
+        while (!isAccepting(state) && state != BAD) {
+            state = stack[--stackSize];
 
             if (state == BAD)
                 break;
 
             //Removes last character and puts it in the buffer
-            char removedCharacter = lexeme.charAt(lexeme.length() - 1);
-            characterBuffer.addLast(removedCharacter);
-            lexeme.deleteCharAt(lexeme.length() - 1);
+            if (characterBufferSize == characterBuffer.length) {
+                characterBuffer = Arrays.copyOf(characterBuffer, characterBufferSize * 2);
+            }
+
+            characterBuffer[characterBufferSize++] = lexeme[--lexemeLength];
         }
 
         //Reporting the result
-        if (acceptingStates.contains(state)) {
-            return lexeme.toString();
-        } else {
-            return "$";
+        return isAccepting(state);
+    }
+
+    //Utility method to push a state on the rollback stack
+    private void pushState(int stateToPush) {
+        if (stackSize == stack.length) {
+            stack = Arrays.copyOf(stack, stackSize * 2);
+        }
+
+        stack[stackSize++] = stateToPush;
+    }
+
+    //Checks whether a state is accepting (ERROR and BAD never are)
+    private boolean isAccepting(int stateToCheck) {
+        return stateToCheck >= 0 && CompressedDfa.ACCEPTING[stateToCheck];
+    }
+
+    //Character categories of the 7-bit ASCII characters (index is the character), built once from the DFA classes
+    private static final byte[] asciiCategories = new byte[128];
+
+    static {
+        for (char character = 0; character < asciiCategories.length; character++) {
+            asciiCategories[character] = (byte) categoriseSlowly(character);
         }
     }
 
+    //Returns the column of the transition table used by the character
     public int categoriseCharacter(char character) {
-        String stringCharacter = String.valueOf(character);
+        if (character < asciiCategories.length) {
+            return asciiCategories[character];
+        }
+
+        //Anything outside ASCII is not part of the language alphabet
+        return 17;
+    }
 
-        if (stringCharacter.matches("[0-9]")) {
+    //Reference classification used to fill the lookup table
+    private static int categoriseSlowly(char character) {
+        if (character >= '0' && character <= '9') {
             return 0;
-        } else if (stringCharacter.matches("[a-zA-Z]")) {
+        } else if ((character >= 'a' && character <= 'z') || (character >= 'A' && character <= 'Z')) {
             return 1;
         } else if (character == '"') {
             return 2;
@@ -203,7 +278,7 @@ public class Lexer {
             return 6;
         } else if (character == '*') {
             return 7;
-        } else if (stringCharacter.matches("[}{)(\\]\\[:,;]")) {
+        } else if ("}{)(][:,;".indexOf(character) != -1) {
             return 8;
         } else if (character == '_') {
             return 9;
@@ -219,7 +294,7 @@ public class Lexer {
             return 14;
         } else if (character == '\'') {
             return 15;
-        } else if (stringCharacter.matches("[\\x20-\\x7E]")) {
+        } else if (character >= 0x20 && character <= 0x7E) {
             return 16;
         } else {
             return 17;
@@ -227,80 +302,379 @@ public class Lexer {
     }
 
     //Joins characters into tokens
+    @Override
     public Token getNextToken() throws Exception {
-        String lexeme;
+        if (!scanToken()) {
+            return null;
+        }
+
+        //Creates token from current state and lexeme
+        switch(state) {
+            case STRING2:
+                return new Word(lexemeString(), TokenType.STRING);
+            case IDENTIFIER:
+                int reservedWord = findReservedWord(lexeme, 0, lexemeLength);
+
+                //Keywords and already seen identifiers are shared instances, so only new identifiers need a string
+                if (reservedWord == -1) {
+                    return interner.word(interner.intern(lexeme, 0, lexemeLength));
+                } else {
+                    return reservedWordList[reservedWord];
+                }
+            case INTEGER:
+                return new WholeNumber(integerValue());
+            case FLOAT2:
+                return new Real(floatValue());
+            case CHAR3:
+                return new Word(lexemeString(), TokenType.CHAR);
+            default:
+                TokenType tokenType = payloadFreeTokenType();
+                return tokenType == null ? null : Token.of(tokenType);
+        }
+    }
+
+    /**
+     * Tokenises the rest of the source into a packed token stream, where lexemes stay as offsets into the source
+     * @return packed token stream
+     */
+    public TokenStream tokenise() throws Exception {
+        TokenStream tokens = new TokenStream(source, interner);
+
+        while (tokeniseNext(tokens)) {
+            //Every call adds at most one token
+        }
+
+        tokens.endLine = lineNumber;
+        tokens.sourceEnd = sourceLength;
+        tokens.trim();
+        return tokens;
+    }
+
+    //Scans the next token into a packed token stream, returns false when the end of file is reached
+    boolean tokeniseNext(TokenStream tokens) throws Exception {
+        if (!scanToken()) {
+            return false;
+        }
+
+        int end = sourcePosition - characterBufferSize;
+        int start = end - lexemeLength;
+
+        switch (state) {
+            case STRING2:
+                tokens.add(TokenType.STRING, start, lineNumber, lexemeLength);
+                break;
+            case IDENTIFIER:
+                int reservedWord = findReservedWord(lexeme, 0, lexemeLength);
+
+                if (reservedWord == -1) {
+                    tokens.add(TokenType.IDENTIFIER, start, lineNumber, interner.intern(lexeme, 0, lexemeLength));
+                } else {
+                    tokens.add(reservedWordList[reservedWord].tokenType, start, lineNumber, reservedWord);
+                }
+                break;
+            case INTEGER:
+                tokens.add(TokenType.NUM, start, lineNumber, integerValue());
+                break;
+            case FLOAT2:
+                tokens.add(TokenType.REAL, start, lineNumber, Float.floatToIntBits(floatValue()));
+                break;
+            case CHAR3:
+                tokens.add(TokenType.CHAR, start, lineNumber, lexemeLength);
+                break;
+            default:
+                TokenType tokenType = payloadFreeTokenType();
+
+                if (tokenType != null) {
+                    tokens.add(tokenType, start, lineNumber, 0);
+                }
+        }
+
+        return true;
+    }
 
-        do {
+    //Scans lexemes until one which is not a comment is found, returns false when the end of file is reached
+    private boolean scanToken() throws Exception {
+        while (true) {
             //Stops loop if end of file is reached
             if (EOF) {
-                return null;
+                return false;
             }
 
-            lexeme = getNextLexeme();
-
             //Reports errors
-            if (lexeme.equals("$")) {
-                throw new Exception("Lexical error in line: " + lineNumber + ", character " + characterInLine);
+            if (!scanLexeme()) {
+                lexicalError(null);
+                skipBadLexeme();
+            } else if (state != COMMENT2 && state != COMMENTM2 && state != COMMENTM3) {
+                return true;
             }
-        } while (state == COMMENT2 || state == COMMENTM2 || state == COMMENTM3);
+        }
+    }
 
-        //Creates token from current state and lexeme
+    //Throws a lexical error at the current position, or records it when recovering
+    private void lexicalError(String detail) throws Exception {
+        String message = "Lexical error in line: " + lineNumber + ", character " + characterInLine;
+
+        if (detail != null) {
+            message += " (" + detail + ")";
+        }
+
+        if (!recovering) {
+            throw new Exception(message);
+        }
+
+        diagnostics.add(new Diagnostic(lineNumber, characterInLine, message));
+    }
+
+    /*
+        Skips a lexeme which could not be scanned (the rollback has given all of its characters back)
+        Unterminated string and char literals are skipped up to the end of the line, since they cannot span lines.
+        Otherwise the first character is skipped together with any following characters which cannot start a
+        lexeme either, so that a run of stray characters gives a single error.
+     */
+    private void skipBadLexeme() {
+        char character = readCharacter();
+
+        if (character == '"' || character == '\'') {
+            while (!EOF && character != '\n') {
+                character = readCharacter();
+            }
+        } else {
+            do {
+                character = readCharacter();
+            } while (!EOF && character != ' ' && character != '\r' && character != '\n'
+                    && transitionTable[START][categoriseCharacter(character)] == ERROR);
+        }
+
+        if (!EOF) {
+            unreadCharacter(character);
+        }
+    }
+
+    //Reads the next character, taking the characters given back during rollback first
+    private char readCharacter() {
+        return characterBufferSize == 0 ? getNextChar() : characterBuffer[--characterBufferSize];
+    }
+
+    //Gives a character back, so that it is read again before the rest of the source
+    private void unreadCharacter(char character) {
+        if (characterBufferSize == characterBuffer.length) {
+            characterBuffer = Arrays.copyOf(characterBuffer, characterBufferSize * 2);
+        }
+
+        characterBuffer[characterBufferSize++] = character;
+    }
+
+    /**
+     * Switches recovery mode on or off
+     * In recovery mode every lexical error is recorded as a diagnostic and lexing goes on after the bad lexeme,
+     * so that a single pass finds all lexical errors of a file
+     * @param recovering true to record errors instead of throwing them
+     */
+    public void setRecovering(boolean recovering) {
+        this.recovering = recovering;
+    }
+
+    /**
+     * @return lexical errors recorded in recovery mode, in source order
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    //Gets the token type of the current lexeme when it is a symbol or operator, null otherwise
+    private TokenType payloadFreeTokenType() {
         switch(state) {
-            case STRING2:
-                return new Word(lexeme, TokenType.STRING);
-            case IDENTIFIER:
-                if (reservedWords.containsKey(lexeme)) {
-                    return reservedWords.get(lexeme);
-                } else {
-                    return new Word(lexeme, TokenType.IDENTIFIER);
-                }
             case SYMBOL:
-                switch (lexeme) {
-                    case "{": return new Token(TokenType.OPENCURLYBRACKET);
-                    case "(": return new Token(TokenType.OPENROUNDBRACKET);
-                    case "}": return new Token(TokenType.CLOSECURLYBRACKET);
-                    case ")": return new Token(TokenType.CLOSEROUNDBRACKET);
-                    case "[": return new Token(TokenType.OPENSQUAREBRACKET);
-                    case "]": return new Token(TokenType.CLOSESQUAREBRACKET);
-                    case ":": return new Token(TokenType.COLON);
-                    case ";": return new Token(TokenType.SEMICOLON);
-                    case ",": return new Token(TokenType.COMMA);
-                    case ".": return new Token(TokenType.DOT);
+                switch (lexeme[0]) {
+                    case '{': return TokenType.OPENCURLYBRACKET;
+                    case '(': return TokenType.OPENROUNDBRACKET;
+                    case '}': return TokenType.CLOSECURLYBRACKET;
+                    case ')': return TokenType.CLOSEROUNDBRACKET;
+                    case '[': return TokenType.OPENSQUAREBRACKET;
+                    case ']': return TokenType.CLOSESQUAREBRACKET;
+                    case ':': return TokenType.COLON;
+                    case ';': return TokenType.SEMICOLON;
+                    case ',': return TokenType.COMMA;
+                    case '.': return TokenType.DOT;
                 }
             case ADD:
-                return new Token(TokenType.ADD);
+                return TokenType.ADD;
             case SUB:
-                return new Token(TokenType.SUB);
+                return TokenType.SUB;
             case MUL:
-                return new Token(TokenType.MUL);
+                return TokenType.MUL;
             case DIV:
-                return new Token(TokenType.DIV);
-            case INTEGER:
-                return new WholeNumber(Integer.parseInt(lexeme));
-            case FLOAT2:
-                return new Real(Float.parseFloat(lexeme));
+                return TokenType.DIV;
             case LT:
-                return new Token(TokenType.LT);
+                return TokenType.LT;
             case LTE:
-                return new Token(TokenType.LTE);
+                return TokenType.LTE;
             case NE:
-                return new Token(TokenType.NE);
+                return TokenType.NE;
             case GT:
-                return new Token(TokenType.GT);
+                return TokenType.GT;
             case GTE:
-                return new Token(TokenType.GTE);
+                return TokenType.GTE;
             case EQ1:
-                return new Token(TokenType.EQ);
+                return TokenType.EQ;
             case EQ2:
-                return new Token(TokenType.CMP);
-            case CHAR3:
-                return new Word(lexeme, TokenType.CHAR);
+                return TokenType.CMP;
             default:
                 return null;
         }
     }
 
+    //Finds the index of the reserved word spelt by the given characters in reservedWordList, -1 if it is not reserved
+    static int findReservedWord(char[] characters, int start, int length) {
+        int candidate;
+
+        //Picks the only keyword which could match from the length and first character, then compares the rest
+        switch (length) {
+            case 2:
+                switch (characters[start]) {
+                    case 'o': candidate = 0; break;
+                    case 'i': candidate = 7; break;
+                    default: return -1;
+                }
+                break;
+            case 3:
+                switch (characters[start]) {
+                    case 'a': candidate = 1; break;
+                    case 'l': candidate = 4; break;
+                    case 'f': candidate = 9; break;
+                    case 'n': candidate = 11; break;
+                    case 'i': candidate = 15; break;
+                    default: return -1;
+                }
+                break;
+            case 4:
+                switch (characters[start]) {
+                    case 't': candidate = 2; break;
+                    case 'e': candidate = 8; break;
+                    case 'b': candidate = 13; break;
+                    case 'c': candidate = 17; break;
+                    case 'a': candidate = 18; break;
+                    default: return -1;
+                }
+                break;
+            case 5:
+                switch (characters[start]) {
+                    case 'f': candidate = characters[start + 1] == 'a' ? 3 : 14; break;
+                    case 'p': candidate = 5; break;
+                    case 'w': candidate = 10; break;
+                    default: return -1;
+                }
+                break;
+            case 6:
+                switch (characters[start]) {
+                    case 'r': candidate = 6; break;
+                    case 's': candidate = 16; break;
+                    default: return -1;
+                }
+                break;
+            case 8:
+                candidate = 12;
+                break;
+            default:
+                return -1;
+        }
+
+        String word = reservedWordList[candidate].lexeme;
+
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != characters[start + i]) {
+                return -1;
+            }
+        }
+
+        return candidate;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public SymbolInterner getInterner() {
+        return interner;
+    }
+
+    //Largest integer up to which every integer is exactly representable as a float
+    private static final long MAX_EXACT_SIGNIFICAND = 1 << 24;
+
+    //Powers of ten which are exact floats (5^10 still fits in the float significand)
+    private static final float[] floatPowersOfTen = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    //Converts the digits of an integer lexeme to its value, literals which do not fit in an int are lexical errors
+    private int integerValue() throws Exception {
+        int value = 0;
+
+        for (int i = 0; i < lexemeLength; i++) {
+            int digit = lexeme[i] - '0';
+
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                //When recovering the literal is kept with the value 0
+                lexicalError("integer literal out of range");
+                return 0;
+            }
+
+            value = value * 10 + digit;
+        }
+
+        return value;
+    }
+
+    /*
+        Converts the characters of a float lexeme to its value, rounded correctly
+        When the digits (without trailing zeros) fit in the 24-bit float significand and there are at most 10 of them
+        after the dot, both the digits and the power of ten are exact floats, so a single float division gives the
+        correctly rounded result. Other literals are left to Float.parseFloat.
+     */
+    private float floatValue() {
+        int end = lexemeLength;
+
+        //Trailing zeros after the dot do not change the value
+        while (lexeme[end - 1] == '0') {
+            end--;
+        }
+
+        long significand = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+
+        for (int i = 0; i < end; i++) {
+            char character = lexeme[i];
+
+            if (character == '.') {
+                inFraction = true;
+                continue;
+            }
+
+            significand = significand * 10 + (character - '0');
+
+            if (significand > MAX_EXACT_SIGNIFICAND) {
+                return Float.parseFloat(lexemeString());
+            }
+
+            if (inFraction) {
+                fractionDigits++;
+            }
+        }
+
+        if (fractionDigits >= floatPowersOfTen.length) {
+            return Float.parseFloat(lexemeString());
+        }
+
+        return (float) significand / floatPowersOfTen[fractionDigits];
+    }
+
+    //Utility method to create a string from the current lexeme
+    private String lexemeString() {
+        return new String(lexeme, 0, lexemeLength);
+    }
+
+    //The source is fully read on construction, so there is nothing left open
+    @Override
     public void close() throws IOException {
-        reader.close();
     }
 }
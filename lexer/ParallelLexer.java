@@ -0,0 +1,231 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Splits large sources into chunks which are tokenised in parallel, giving the same token stream as Lexer.tokenise()
+public class ParallelLexer {
+    //Default number of characters per chunk
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final char[] source;
+    private final int sourceStart;
+    private final int sourceEnd;
+
+    //Boundary scanner states
+    private static final int CODE = 0;
+    private static final int STRING = 1;
+    private static final int CHAR_OPEN = 2;
+    private static final int CHAR_BODY = 3;
+    private static final int LINE_COMMENT = 4;
+    private static final int BLOCK_COMMENT = 5;
+    private static final int BLOCK_COMMENT_STAR = 6;
+
+    /**
+     * Reads the program stored in the file at programPath
+     * @param programPath path of the program
+     */
+    public ParallelLexer(String programPath) throws IOException {
+        this(Lexer.readFile(programPath));
+    }
+
+    /**
+     * Uses a program which is already in memory (read from its position to its limit)
+     * @param source program source
+     */
+    public ParallelLexer(CharBuffer source) {
+        if (source.hasArray()) {
+            this.source = source.array();
+            sourceStart = source.arrayOffset() + source.position();
+            sourceEnd = source.arrayOffset() + source.limit();
+        } else {
+            this.source = new char[source.remaining()];
+            source.duplicate().get(this.source);
+            sourceStart = 0;
+            sourceEnd = this.source.length;
+        }
+    }
+
+    /**
+     * Tokenises the source on the common fork join pool with the default chunk size
+     * @return packed token stream
+     */
+    public TokenStream tokenise() throws Exception {
+        return tokenise(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Tokenises the source in chunks of roughly chunkSize characters on the given pool
+     * @param pool pool which runs the chunk lexers
+     * @param chunkSize minimum number of characters in a chunk
+     * @return packed token stream (the same as Lexer.tokenise() on the whole source)
+     * @throws Exception the lexical error which the sequential lexer would report first
+     */
+    public TokenStream tokenise(ForkJoinPool pool, int chunkSize) throws Exception {
+        List<Chunk> chunks = findChunks(chunkSize);
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for (Chunk chunk : chunks) {
+            tasks.add(pool.submit(chunk::lex));
+        }
+
+        SymbolInterner interner = new SymbolInterner();
+        TokenStream tokens = new TokenStream(source, interner, (sourceEnd - sourceStart) / 4);
+
+        for (int i = 0; i < chunks.size(); i++) {
+            tasks.get(i).join();
+            Chunk chunk = chunks.get(i);
+
+            //Chunks are joined in source order, so the first error found is the one the sequential lexer reports
+            if (chunk.error != null) {
+                for (ForkJoinTask<?> task : tasks) {
+                    task.cancel(false);
+                }
+
+                throw chunk.error;
+            }
+
+            append(tokens, chunk.tokens);
+        }
+
+        tokens.trim();
+        return tokens;
+    }
+
+    //Copies the tokens of a chunk, giving its identifiers the ids they get when interned in source order
+    private void append(TokenStream tokens, TokenStream chunkTokens) {
+        SymbolInterner chunkInterner = chunkTokens.getInterner();
+        int[] symbolIds = new int[chunkInterner.size()];
+
+        //Chunk ids are given in order of first occurrence, so interning them in id order keeps the source order
+        for (int symbolId = 0; symbolId < symbolIds.length; symbolId++) {
+            symbolIds[symbolId] = tokens.getInterner().intern(chunkInterner.symbol(symbolId));
+        }
+
+        tokens.append(chunkTokens, symbolIds);
+    }
+
+    /*
+        Finds the chunks
+        A chunk can only end right after a newline which is outside string literals, char literals and comments
+        (it is then always between two tokens). The scanner follows the DFA for those lexemes exactly, and stops
+        splitting when it finds one which the DFA would reject, leaving the rest to a single chunk.
+     */
+    private List<Chunk> findChunks(int chunkSize) {
+        List<Chunk> chunks = new ArrayList<>();
+        int chunkStart = sourceStart;
+        int chunkLine = 1;
+        int lineNumber = 1;
+        int state = CODE;
+        int position = sourceStart;
+
+        scanning:
+        while (position < sourceEnd) {
+            char character = source[position++];
+
+            if (character == '\n') {
+                lineNumber++;
+            }
+
+            switch (state) {
+                case CODE:
+                    if (character == '"') {
+                        state = STRING;
+                    } else if (character == '\'') {
+                        state = CHAR_OPEN;
+                    } else if (character == '/' && position < sourceEnd && source[position] == '/') {
+                        position++;
+                        state = LINE_COMMENT;
+                    } else if (character == '/' && position < sourceEnd && source[position] == '*') {
+                        position++;
+                        state = BLOCK_COMMENT;
+                    } else if (character == '\n' && position - chunkStart >= chunkSize && position < sourceEnd) {
+                        chunks.add(new Chunk(chunkStart, position, chunkLine));
+                        chunkStart = position;
+                        chunkLine = lineNumber;
+                    }
+                    break;
+                case STRING:
+                    if (character == '"') {
+                        state = CODE;
+                    } else if (character == '\n' || isOutsideAlphabet(character)) {
+                        break scanning;
+                    }
+                    break;
+                case CHAR_OPEN:
+                    if (character == '\n' || isOutsideAlphabet(character)) {
+                        break scanning;
+                    }
+
+                    state = CHAR_BODY;
+                    break;
+                case CHAR_BODY:
+                    if (character != '\'') {
+                        break scanning;
+                    }
+
+                    state = CODE;
+                    break;
+                case LINE_COMMENT:
+                    if (character == '\n') {
+                        state = CODE;
+
+                        if (position - chunkStart >= chunkSize && position < sourceEnd) {
+                            chunks.add(new Chunk(chunkStart, position, chunkLine));
+                            chunkStart = position;
+                            chunkLine = lineNumber;
+                        }
+                    }
+                    break;
+                case BLOCK_COMMENT:
+                    if (character == '*') {
+                        state = BLOCK_COMMENT_STAR;
+                    }
+                    break;
+                case BLOCK_COMMENT_STAR:
+                    //Like the DFA, only */ closes the comment (a second * goes back to the comment body)
+                    state = character == '/' ? CODE : BLOCK_COMMENT;
+                    break;
+            }
+        }
+
+        chunks.add(new Chunk(chunkStart, sourceEnd, chunkLine));
+        return chunks;
+    }
+
+    //Characters in the last category of the transition table, which end string and char literals with an error
+    private static boolean isOutsideAlphabet(char character) {
+        return character != '\t' && (character < 0x20 || character > 0x7E);
+    }
+
+    //Part of the source which is tokenised by its own lexer
+    private class Chunk {
+        private final int start;
+        private final int end;
+        private final int lineNumber;
+
+        private TokenStream tokens;
+        private Exception error;
+
+        private Chunk(int start, int end, int lineNumber) {
+            this.start = start;
+            this.end = end;
+            this.lineNumber = lineNumber;
+        }
+
+        //Tokenises the chunk, keeping the lexical error (if any) for the joining thread
+        private void lex() {
+            try {
+                Lexer lexer = new Lexer(CharBuffer.wrap(source, start, end - start));
+                lexer.lineNumber = lineNumber;
+                tokens = lexer.tokenise();
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+    }
+}
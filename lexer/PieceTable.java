@@ -0,0 +1,148 @@
+package lexer;
+
+import java.util.Arrays;
+
+/*
+    Source text of an edited program, made of pieces of character arrays which are never changed
+    Replacing a range only creates the pieces around it, the characters of the other pieces are shared with the text
+    before the replacement (which stays as it was).
+ */
+class PieceTable {
+    //Array of every piece, and the offset of the piece in its array
+    private final char[][] arrays;
+    private final int[] arrayOffsets;
+
+    //Offset of every piece in the text, followed by the length of the text
+    private final int[] starts;
+
+    //Piece of the last character read (characters are mostly read in order)
+    private int lastPiece = 0;
+
+    /**
+     * Creates the text of a source which has not been edited
+     * @param source source characters (not copied)
+     * @param length number of characters of the source which are part of the text
+     */
+    PieceTable(char[] source, int length) {
+        this(new char[][] {source}, new int[] {0}, new int[] {0, length});
+    }
+
+    private PieceTable(char[][] arrays, int[] arrayOffsets, int[] starts) {
+        this.arrays = arrays;
+        this.arrayOffsets = arrayOffsets;
+        this.starts = starts;
+    }
+
+    int length() {
+        return starts[arrays.length];
+    }
+
+    /**
+     * Gets a character of the text
+     * @param offset offset of the character
+     * @return character
+     */
+    char charAt(int offset) {
+        int piece = lastPiece;
+
+        if (offset < starts[piece] || offset >= starts[piece + 1]) {
+            piece = pieceAt(offset);
+            lastPiece = piece;
+        }
+
+        return arrays[piece][arrayOffsets[piece] + offset - starts[piece]];
+    }
+
+    /**
+     * Copies a range of the text into an array
+     * @param from offset of the first character
+     * @param to offset after the last character
+     * @param destination array to copy to
+     * @param destinationOffset index in destination of the first character
+     */
+    void getChars(int from, int to, char[] destination, int destinationOffset) {
+        if (from >= to) {
+            return;
+        }
+
+        for (int piece = pieceAt(from); from < to; piece++) {
+            int end = Math.min(starts[piece + 1], to);
+            System.arraycopy(arrays[piece], arrayOffsets[piece] + from - starts[piece], destination, destinationOffset, end - from);
+            destinationOffset += end - from;
+            from = end;
+        }
+    }
+
+    /**
+     * Creates the text with a range replaced by other characters (this text is not changed)
+     * @param from offset of the first replaced character
+     * @param to offset after the last replaced character
+     * @param characters replacing characters (not copied, so they must not be changed afterwards)
+     * @return edited text
+     */
+    PieceTable replace(int from, int to, char[] characters) {
+        int pieces = arrays.length;
+        int shift = characters.length - (to - from);
+        char[][] newArrays = new char[pieces + 2][];
+        int[] newArrayOffsets = new int[pieces + 2];
+        int[] newStarts = new int[pieces + 3];
+        int count = 0;
+
+        //Pieces starting before the range (the last one is cut by the start of the next piece)
+        for (int piece = 0; piece < pieces && starts[piece] < from; piece++) {
+            newArrays[count] = arrays[piece];
+            newArrayOffsets[count] = arrayOffsets[piece];
+            newStarts[count] = starts[piece];
+            count++;
+        }
+
+        if (characters.length > 0) {
+            newArrays[count] = characters;
+            newArrayOffsets[count] = 0;
+            newStarts[count] = from;
+            count++;
+        }
+
+        //Pieces ending after the range (the first one is cut at its end)
+        for (int piece = to < length() ? pieceAt(to) : pieces; piece < pieces; piece++) {
+            int start = Math.max(starts[piece], to);
+            newArrays[count] = arrays[piece];
+            newArrayOffsets[count] = arrayOffsets[piece] + start - starts[piece];
+            newStarts[count] = start + shift;
+            count++;
+        }
+
+        newStarts[count] = length() + shift;
+
+        return new PieceTable(Arrays.copyOf(newArrays, count), Arrays.copyOf(newArrayOffsets, count),
+                Arrays.copyOf(newStarts, count + 1));
+    }
+
+    /**
+     * Copies the whole text into a single array
+     * @return characters of the text
+     */
+    char[] toCharArray() {
+        char[] characters = new char[length()];
+        getChars(0, characters.length, characters, 0);
+        return characters;
+    }
+
+    //Gets the piece containing a character (the last piece starting at or before it)
+    private int pieceAt(int offset) {
+        int low = 0;
+        int high = arrays.length - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (starts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+}
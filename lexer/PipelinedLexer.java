@@ -0,0 +1,168 @@
+package lexer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+    Runs a lexer on its own thread, ahead of the parser
+    Tokens are passed through a bounded single-producer/single-consumer ring without locks: the lexer thread only
+    writes the tail, the parser only writes the head. When the ring is full the lexer waits for the parser
+    (backpressure), and the parser takes every token which is ready at once before looking at the tail again.
+ */
+public class PipelinedLexer implements TokenSource {
+    //Default number of tokens the lexer can run ahead
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Lexer lexer;
+    private final Thread lexerThread;
+
+    //Ring of tokens and the line number reported by the lexer once each was read (null marks the end or an error)
+    private final Token[] ring;
+    private final int[] lines;
+    private final int mask;
+
+    //Number of tokens published by the lexer thread and taken by the parser
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    //Written by the lexer thread before it publishes the end marker (anything it threw, including errors)
+    private volatile Throwable error;
+
+    //Set when the parser stops reading, so that a lexer waiting for space can stop
+    private volatile boolean closed = false;
+
+    //Parser side state, only used by the parser thread
+    private long readIndex = 0;
+    private long availableIndex = 0;
+    private int lineNumber = 1;
+    private boolean ended = false;
+
+    /**
+     * Starts lexing on a new thread
+     * @param lexer lexer to run
+     */
+    public PipelinedLexer(Lexer lexer) {
+        this(lexer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts lexing on a new thread
+     * @param lexer lexer to run
+     * @param capacity number of tokens the lexer can run ahead (rounded up to a power of two)
+     */
+    public PipelinedLexer(Lexer lexer, int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1;
+
+        this.lexer = lexer;
+        ring = new Token[size];
+        lines = new int[size];
+        mask = size - 1;
+
+        lexerThread = new Thread(this::produce, "pipelined-lexer");
+        lexerThread.setDaemon(true);
+        lexerThread.start();
+    }
+
+    //Lexer thread loop
+    private void produce() {
+        long writeIndex = 0;
+
+        try {
+            Token token;
+
+            while ((token = lexer.getNextToken()) != null) {
+                if (!publish(writeIndex++, token)) {
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            //The end marker is published whatever the lexer threw, so that the parser never waits for it forever
+            publish(writeIndex, null);
+        }
+    }
+
+    /**
+     * Writes a token in the ring, waiting for the parser while the ring is full
+     * @param writeIndex index of the token
+     * @param token token to publish, null for the end marker
+     * @return false if the parser stopped reading before there was space
+     */
+    private boolean publish(long writeIndex, Token token) {
+        while (head.get() <= writeIndex - ring.length) {
+            if (closed) {
+                return false;
+            }
+
+            LockSupport.parkNanos(1000);
+        }
+
+        ring[(int) writeIndex & mask] = token;
+        lines[(int) writeIndex & mask] = lexer.lineNumber;
+        tail.lazySet(writeIndex + 1);
+        return true;
+    }
+
+    /**
+     * Takes the next token from the ring, waiting for the lexer thread if none is ready
+     * @return next token, null at the end of the file
+     * @throws Exception the lexical error at this position of the source (or anything else the lexer thread threw),
+     * with the same message and the original as its cause
+     */
+    @Override
+    public Token getNextToken() throws Exception {
+        if (ended) {
+            return null;
+        }
+
+        if (readIndex == availableIndex) {
+            //Hands the consumed slots back to the lexer, then waits for the next batch
+            head.lazySet(readIndex);
+            int spins = 0;
+
+            while ((availableIndex = tail.get()) == readIndex) {
+                if (++spins < 100) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(1000);
+                }
+            }
+        } else if ((readIndex & (ring.length / 4 - 1)) == 0) {
+            //Also frees space every quarter of the ring, so that the lexer does not wait for a whole batch
+            head.lazySet(readIndex);
+        }
+
+        int slot = (int) readIndex & mask;
+        Token token = ring[slot];
+        lineNumber = lines[slot];
+        ring[slot] = null;
+        readIndex++;
+
+        if (token == null) {
+            ended = true;
+            head.lazySet(readIndex);
+
+            //Rethrown on the parser thread, keeping what the lexer thread threw as the cause
+            if (error != null) {
+                throw new Exception(error.getMessage() != null ? error.getMessage() : error.toString(), error);
+            }
+        }
+
+        return token;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    //Stops the lexer thread if the parser did not read everything (for example after a syntax error)
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        lexerThread.interrupt();
+        lexer.close();
+    }
+}
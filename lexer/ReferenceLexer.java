@@ -0,0 +1,258 @@
+package lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Stack;
+import static lexer.States.*;
+
+/*
+    The table-driven lexer as it was before the generated DFA, kept as the reference of DfaGenerator --check and of
+    the lexer benchmark
+    It reads the characters through a Reader, looks transitions up in the int[][] table of States, classifies
+    characters with regular expressions and rolls back with a boxed stack and character deque, so it shares none of
+    the scanning code of Lexer. It is not used by the compiler.
+ */
+class ReferenceLexer {
+    int lineNumber;
+    int characterInLine;
+    boolean EOF = false;
+    private final Reader reader;
+    private final Stack<Integer> stack;
+    private final HashSet<Integer> acceptingStates;
+    private final ArrayDeque<Character> characterBuffer;
+    private final HashMap<String, Word> reservedWords;
+    private int state;
+
+    //Initialises the lexer with the program read by reader
+    ReferenceLexer(Reader reader) {
+        lineNumber = 1;
+        characterInLine = 0;
+
+        this.reader = reader;
+
+        stack = new Stack<>();
+        characterBuffer = new ArrayDeque<>();
+        acceptingStates = new HashSet<>(getAcceptingStates());
+        reservedWords = new HashMap<>();
+
+        //Reserves the keywords
+        for (Word reservedWord : Lexer.reservedWordList) {
+            reservedWords.put(reservedWord.lexeme, reservedWord);
+        }
+    }
+
+    //Gets the next character of the file
+    private char getNextChar() throws IOException {
+        int nextCharacter;
+
+        nextCharacter = reader.read();
+
+        //If the next character is the end of file, set EOf flag to true
+        if (nextCharacter == -1) {
+            EOF = true;
+            return ' ';
+        }
+
+        //Newline adds 1 to the line number and resets the character in line counter
+        if ((char)nextCharacter == '\n') {
+            characterInLine = 0;
+            lineNumber++;
+        } else {
+            //Tabs are replaced with spaces
+            if ((char) nextCharacter == '\t') {
+                nextCharacter = ' ';
+            }
+
+            characterInLine++;
+        }
+
+        return (char)nextCharacter;
+    }
+
+    //Main table-driven lexer algorithm
+    private String getNextLexeme() throws IOException {
+        //Initialisation phase
+        int category;
+        state = START;
+
+        StringBuilder lexeme = new StringBuilder();
+        stack.clear();
+        stack.push(BAD);
+
+        char nextCharacter;
+
+        //Scanning loop
+        while(state != ERROR) {
+            //If the character buffer is empty, read next character from file, otherwise take from buffer
+            if (characterBuffer.size() == 0) {
+                nextCharacter = getNextChar();
+
+                //If the end of file is reached, returns the string in the current buffer
+                if (EOF) {
+                    if (acceptingStates.contains(state) || state == START || state == COMMENT1 || state == COMMENTM1 || state == COMMENTM2) {
+                        return lexeme.toString();
+                    } else {
+                        return "$";
+                    }
+                }
+            } else {
+                nextCharacter = characterBuffer.removeLast();
+            }
+
+            //Ignores spaces, newlines and carriage
+            if (state == START && (nextCharacter == ' ' || nextCharacter == '\r' || nextCharacter == '\n')) {
+                continue;
+            }
+
+            lexeme.append(nextCharacter);
+
+            if (acceptingStates.contains(state)) {
+                stack.clear();
+            }
+
+            stack.push(state);
+            category = categoriseCharacter(nextCharacter);
+            state = transitionTable[state][category];
+        }
+
+        //Rollback loop
+        while (!acceptingStates.contains(state) && state != BAD) {
+            state = stack.pop();
+
+            if (state == BAD)
+                break;
+
+            //Removes last character and puts it in the buffer
+            char removedCharacter = lexeme.charAt(lexeme.length() - 1);
+            characterBuffer.addLast(removedCharacter);
+            lexeme.deleteCharAt(lexeme.length() - 1);
+        }
+
+        //Reporting the result
+        if (acceptingStates.contains(state)) {
+            return lexeme.toString();
+        } else {
+            return "$";
+        }
+    }
+
+    //Returns the column of the transition table used by the character
+    private static int categoriseCharacter(char character) {
+        String stringCharacter = String.valueOf(character);
+
+        if (stringCharacter.matches("[0-9]")) {
+            return 0;
+        } else if (stringCharacter.matches("[a-zA-Z]")) {
+            return 1;
+        } else if (character == '"') {
+            return 2;
+        } else if (character == '.') {
+            return 3;
+        } else if (character == '+') {
+            return 4;
+        } else if (character == '-') {
+            return 5;
+        } else if (character == '/') {
+            return 6;
+        } else if (character == '*') {
+            return 7;
+        } else if (stringCharacter.matches("[}{)(\\]\\[:,;]")) {
+            return 8;
+        } else if (character == '_') {
+            return 9;
+        } else if (character == '=') {
+            return 10;
+        } else if (character == '<') {
+            return 11;
+        } else if (character == '>') {
+            return 12;
+        } else if (character == '!') {
+            return 13;
+        } else if (character == '\n') {
+            return 14;
+        } else if (character == '\'') {
+            return 15;
+        } else if (stringCharacter.matches("[\\x20-\\x7E]")) {
+            return 16;
+        } else {
+            return 17;
+        }
+    }
+
+    //Joins characters into tokens, returns null at the end of the file
+    Token getNextToken() throws Exception {
+        String lexeme;
+
+        do {
+            //Stops loop if end of file is reached
+            if (EOF) {
+                return null;
+            }
+
+            lexeme = getNextLexeme();
+
+            //Reports errors
+            if (lexeme.equals("$")) {
+                throw new Exception("Lexical error in line: " + lineNumber + ", character " + characterInLine);
+            }
+        } while (state == COMMENT2 || state == COMMENTM2 || state == COMMENTM3);
+
+        //Creates token from current state and lexeme
+        switch(state) {
+            case STRING2:
+                return new Word(lexeme, TokenType.STRING);
+            case IDENTIFIER:
+                if (reservedWords.containsKey(lexeme)) {
+                    return reservedWords.get(lexeme);
+                } else {
+                    return new Word(lexeme, TokenType.IDENTIFIER);
+                }
+            case SYMBOL:
+                switch (lexeme) {
+                    case "{": return new Token(TokenType.OPENCURLYBRACKET);
+                    case "(": return new Token(TokenType.OPENROUNDBRACKET);
+                    case "}": return new Token(TokenType.CLOSECURLYBRACKET);
+                    case ")": return new Token(TokenType.CLOSEROUNDBRACKET);
+                    case "[": return new Token(TokenType.OPENSQUAREBRACKET);
+                    case "]": return new Token(TokenType.CLOSESQUAREBRACKET);
+                    case ":": return new Token(TokenType.COLON);
+                    case ";": return new Token(TokenType.SEMICOLON);
+                    case ",": return new Token(TokenType.COMMA);
+                    case ".": return new Token(TokenType.DOT);
+                }
+            case ADD:
+                return new Token(TokenType.ADD);
+            case SUB:
+                return new Token(TokenType.SUB);
+            case MUL:
+                return new Token(TokenType.MUL);
+            case DIV:
+                return new Token(TokenType.DIV);
+            case INTEGER:
+                return new WholeNumber(Integer.parseInt(lexeme));
+            case FLOAT2:
+                return new Real(Float.parseFloat(lexeme));
+            case LT:
+                return new Token(TokenType.LT);
+            case LTE:
+                return new Token(TokenType.LTE);
+            case NE:
+                return new Token(TokenType.NE);
+            case GT:
+                return new Token(TokenType.GT);
+            case GTE:
+                return new Token(TokenType.GTE);
+            case EQ1:
+                return new Token(TokenType.EQ);
+            case EQ2:
+                return new Token(TokenType.CMP);
+            case CHAR3:
+                return new Word(lexeme, TokenType.CHAR);
+            default:
+                return null;
+        }
+    }
+}
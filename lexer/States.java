@@ -36,6 +36,38 @@ class States{
     public final static int CHAR2 = 26;
     public final static int CHAR3 = 27;
 
+    //Table containing DFA transitions, indexed by state, then by character category (see Lexer.categoriseCharacter)
+    static final int[][] transitionTable = {
+        {INTEGER,IDENTIFIER,STRING1,SYMBOL,ADD,SUB,DIV,MUL,SYMBOL,IDENTIFIER,EQ1,LT,GT,NOT,SYMBOL,CHAR1,ERROR,ERROR},
+        {STRING1,STRING1,STRING2,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,STRING1,ERROR,STRING1,STRING1,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {IDENTIFIER,IDENTIFIER,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,IDENTIFIER,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,COMMENT1,COMMENTM1,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {INTEGER,ERROR,ERROR,FLOAT1,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {FLOAT2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {FLOAT2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,LTE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,NE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,GTE,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,EQ2,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT1,COMMENT2,COMMENT1,COMMENT1,COMMENT1},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM2,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1},
+        {COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM3,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1,COMMENTM1},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR},
+        {CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,CHAR2,ERROR,CHAR2,CHAR2,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,CHAR3,ERROR,ERROR},
+        {ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR,ERROR}
+    };
+
     public static List<Integer> getAcceptingStates() {
         return Arrays.asList(STRING2,IDENTIFIER,SYMBOL,ADD,SUB,MUL,DIV,INTEGER,FLOAT2,
                 LT,LTE,NE,GT,GTE,EQ1,EQ2,COMMENT2,COMMENTM2,COMMENTM3, CHAR3);
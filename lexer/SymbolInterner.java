@@ -0,0 +1,139 @@
+package lexer;
+
+import java.util.Arrays;
+
+//Per-compilation identifier table, gives every distinct identifier a dense integer id (0, 1, 2, ...)
+public class SymbolInterner {
+    //Identifier strings and their shared identifier tokens, indexed by id
+    private String[] symbols = new String[64];
+    private Word[] words = new Word[64];
+    private int[] hashes = new int[64];
+    private int size = 0;
+
+    //Open addressing hash table storing id + 1 (0 marks an empty slot)
+    private int[] table = new int[128];
+
+    /**
+     * Gets the id of an identifier, adding it to the table the first time it is seen
+     * (no string is created for identifiers which are already in the table)
+     * @param characters characters containing the identifier
+     * @param start offset of the identifier
+     * @param length length of the identifier
+     * @return symbol id
+     */
+    public int intern(char[] characters, int start, int length) {
+        int hash = hash(characters, start, length);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+
+            if (hashes[id] == hash && matches(symbols[id], characters, start, length)) {
+                return id;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return add(new String(characters, start, length), hash, slot);
+    }
+
+    /**
+     * Gets the id of an identifier, adding it to the table the first time it is seen
+     * @param identifier identifier string
+     * @return symbol id
+     */
+    public int intern(String identifier) {
+        char[] characters = identifier.toCharArray();
+        return intern(characters, 0, characters.length);
+    }
+
+    /**
+     * Gets the identifier of a symbol id
+     * @param id symbol id
+     * @return identifier string (the same instance every time)
+     */
+    public String symbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * Gets the identifier token of a symbol id
+     * @param id symbol id
+     * @return identifier token (the same instance every time)
+     */
+    public Word word(int id) {
+        return words[id];
+    }
+
+    /**
+     * @return number of distinct identifiers
+     */
+    public int size() {
+        return size;
+    }
+
+    //Registers a new identifier in the given empty slot
+    private int add(String identifier, int hash, int slot) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            words = Arrays.copyOf(words, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+
+        int id = size++;
+        symbols[id] = identifier;
+        words[id] = new Word(identifier, TokenType.IDENTIFIER, id);
+        hashes[id] = hash;
+        table[slot] = id + 1;
+
+        //Keeps the table at most half full
+        if (size * 2 > table.length) {
+            rehash();
+        }
+
+        return id;
+    }
+
+    //Doubles the hash table and reinserts all ids
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(char[] characters, int start, int length) {
+        int hash = 0;
+
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + characters[i];
+        }
+
+        //Spreads the low bits, which select the slot
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String identifier, char[] characters, int start, int length) {
+        if (identifier.length() != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (identifier.charAt(i) != characters[start + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
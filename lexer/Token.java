@@ -1,9 +1,27 @@
 package lexer;
 
 public class Token {
-    public TokenType tokenType;
+    //Shared instances for tokens which carry nothing but their type (symbols and operators), indexed by ordinal
+    private static final Token[] canonicalTokens = new Token[TokenType.values().length];
+
+    static {
+        for (TokenType tokenType : TokenType.values()) {
+            canonicalTokens[tokenType.ordinal()] = new Token(tokenType);
+        }
+    }
+
+    public final TokenType tokenType;
 
     public Token(TokenType tokenType) {
         this.tokenType = tokenType;
     }
+
+    /**
+     * Gets the shared token of a token type, used instead of allocating payload-free tokens
+     * @param tokenType type of the token
+     * @return the canonical token with that type
+     */
+    public static Token of(TokenType tokenType) {
+        return canonicalTokens[tokenType.ordinal()];
+    }
 }
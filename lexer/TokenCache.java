@@ -0,0 +1,94 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+    On-disk cache of packed token streams, so that unchanged sources are not lexed again
+    Entries (see CacheDirectory) are checked against the lexer fingerprint, so entries written by another lexer
+    version are ignored and replaced.
+ */
+public class TokenCache {
+    //Default size cap of the cache directory
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x544B4331;
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".tokens";
+
+    private final CacheDirectory directory;
+
+    /**
+     * Uses (and creates if needed) a cache directory with the default size cap
+     * @param directory path of the cache directory
+     */
+    public TokenCache(String directory) throws IOException {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Uses (and creates if needed) a cache directory, deleting entries if it is over the size cap
+     * @param directory path of the cache directory
+     * @param maxSize maximum number of bytes kept in the directory
+     */
+    public TokenCache(String directory, long maxSize) throws IOException {
+        this.directory = new CacheDirectory(directory, maxSize, EXTENSION, MAGIC, FORMAT_VERSION);
+    }
+
+    /**
+     * Gets the token stream of a program, from the cache when the same source was tokenised before
+     * @param programPath path of the program
+     * @return packed token stream (the same as Lexer.tokenise() on the program)
+     * @throws Exception the lexical error in the program
+     */
+    public TokenStream tokenise(String programPath) throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(programPath));
+        char[] source = decode(bytes);
+
+        Path entry = directory.entry(bytes);
+        TokenStream tokens = load(entry, source);
+
+        if (tokens == null) {
+            TokenStream lexed = new Lexer(CharBuffer.wrap(source)).tokenise();
+            directory.write(entry, Lexer.fingerprint(), lexed.sourceEnd, lexed.serialisedSize(), lexed::serialise);
+            tokens = lexed;
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Decodes the bytes of a source file with the default charset, like the lexer does
+     * @param bytes bytes of the file
+     * @return characters of the source
+     */
+    public static char[] decode(byte[] bytes) {
+        CharBuffer decoded = Charset.defaultCharset().decode(ByteBuffer.wrap(bytes));
+        char[] source = new char[decoded.remaining()];
+        decoded.get(source);
+        return source;
+    }
+
+    //Reads the token stream of a cache entry, null when it is missing, out of date or damaged
+    private TokenStream load(Path entry, char[] source) {
+        ByteBuffer buffer = directory.read(entry, Lexer.fingerprint(), source.length);
+
+        if (buffer == null) {
+            return null;
+        }
+
+        try {
+            TokenStream tokens = TokenStream.deserialise(buffer, source);
+            directory.touch(entry);
+            return tokens;
+        } catch (RuntimeException e) {
+            directory.discard(entry);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package lexer;
+
+import java.io.IOException;
+
+//Anything the parser can read tokens from (the lexer itself, a packed token stream or a pipelined lexer)
+public interface TokenSource {
+    //Gets the next token, null at the end of the file
+    Token getNextToken() throws Exception;
+
+    //Gets the line number used in error messages at the current position
+    int getLineNumber();
+
+    void close() throws IOException;
+}
@@ -0,0 +1,466 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+//Packed token stream, tokens are stored in parallel primitive arrays and lexemes stay as offsets into the source
+public class TokenStream {
+    private static final TokenType[] tokenTypes = TokenType.values();
+
+    //Source which the offsets refer to
+    private final char[] source;
+
+    //Identifier table which the identifier payloads refer to
+    private final SymbolInterner interner;
+
+    //Token type ordinals
+    private byte[] types;
+
+    //Offset of every lexeme in the source
+    private int[] starts;
+
+    /*
+        Payload of every token, depending on its type
+        - identifiers: symbol id
+        - strings and chars: lexeme length
+        - integers: value
+        - floats: float bits
+        - keywords: index in the lexer's reserved word list
+        - symbols and operators: unused
+     */
+    private int[] payloads;
+
+    private int size;
+
+    /*
+        Line numbers reported by the lexer once each token was read (used for error messages)
+        They only ever grow, so only the index of the first token of every new line number is kept
+     */
+    private int[] lineChangeTokens;
+    private int[] lineChangeValues;
+    private int lineChanges;
+
+    //Line number reported by the lexer when it reached the end of the file
+    public int endLine = 1;
+
+    //Offset in the source where the lexer stopped reading
+    public int sourceEnd;
+
+    /**
+     * Creates an empty token stream
+     * @param source source characters which the lexeme offsets refer to
+     * @param interner identifier table which the identifier ids refer to
+     */
+    public TokenStream(char[] source, SymbolInterner interner) {
+        this(source, interner, 1024);
+    }
+
+    /**
+     * Creates an empty token stream
+     * @param source source characters which the lexeme offsets refer to
+     * @param interner identifier table which the identifier ids refer to
+     * @param capacity initial number of tokens which can be stored without growing
+     */
+    public TokenStream(char[] source, SymbolInterner interner, int capacity) {
+        this.source = source;
+        this.interner = interner;
+        capacity = Math.max(capacity, 16);
+        types = new byte[capacity];
+        starts = new int[capacity];
+        payloads = new int[capacity];
+        lineChangeTokens = new int[16];
+        lineChangeValues = new int[16];
+    }
+
+    /**
+     * Appends a token to the stream
+     * @param tokenType type of the token
+     * @param start offset of the lexeme in the source
+     * @param line line number of the token
+     * @param payload length, value or reserved word index of the token (see payloads)
+     */
+    public void add(TokenType tokenType, int start, int line, int payload) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+
+        addLineChange(size, line);
+        types[size] = (byte) tokenType.ordinal();
+        starts[size] = start;
+        payloads[size] = payload;
+        size++;
+    }
+
+    /**
+     * Appends all tokens of another stream over the same source
+     * @param other stream to copy
+     * @param symbolIds id in this stream's interner of every identifier id in the other stream
+     */
+    void append(TokenStream other, int[] symbolIds) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.payloads, 0, payloads, size, other.size);
+
+        byte identifier = (byte) TokenType.IDENTIFIER.ordinal();
+
+        for (int i = size; i < size + other.size; i++) {
+            if (types[i] == identifier) {
+                payloads[i] = symbolIds[payloads[i]];
+            }
+        }
+
+        for (int i = 0; i < other.lineChanges; i++) {
+            addLineChange(size + other.lineChangeTokens[i], other.lineChangeValues[i]);
+        }
+
+        size += other.size;
+        endLine = other.endLine;
+        sourceEnd = other.sourceEnd;
+    }
+
+    //Grows the token arrays so that they can hold at least the given number of tokens
+    private void ensureCapacity(int required) {
+        int capacity = Math.max(types.length, 16);
+
+        while (capacity < required) {
+            capacity *= 2;
+        }
+
+        if (capacity != types.length) {
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+    }
+
+    //Records the line number of a token when it differs from the line number of the token before it
+    private void addLineChange(int index, int line) {
+        if (lineChanges == 0 || lineChangeValues[lineChanges - 1] != line) {
+            if (lineChanges == lineChangeTokens.length) {
+                lineChangeTokens = Arrays.copyOf(lineChangeTokens, lineChanges * 2);
+                lineChangeValues = Arrays.copyOf(lineChangeValues, lineChanges * 2);
+            }
+
+            lineChangeTokens[lineChanges] = index;
+            lineChangeValues[lineChanges] = line;
+            lineChanges++;
+        }
+    }
+
+    /**
+     * Releases the unused capacity once no more tokens will be added
+     */
+    public void trim() {
+        types = Arrays.copyOf(types, size);
+        starts = Arrays.copyOf(starts, size);
+        payloads = Arrays.copyOf(payloads, size);
+        lineChangeTokens = Arrays.copyOf(lineChangeTokens, lineChanges);
+        lineChangeValues = Arrays.copyOf(lineChangeValues, lineChanges);
+    }
+
+    /**
+     * Gets the number of bytes written by serialise
+     * @return serialised size
+     */
+    int serialisedSize() {
+        int symbolBytes = 0;
+
+        for (int id = 0; id < interner.size(); id++) {
+            symbolBytes += 4 + interner.symbol(id).length();
+        }
+
+        return 5 * 4 + size * 9 + lineChanges * 8 + symbolBytes;
+    }
+
+    /*
+        Writes the stream in a compact binary form (used by TokenCache)
+        Counts, lexeme offsets, payloads and line changes are written as ints, then the type of every token as a
+        byte, then the identifiers in id order (identifiers are always ASCII). The source itself is not written.
+     */
+    void serialise(ByteBuffer buffer) {
+        buffer.putInt(size);
+        buffer.putInt(lineChanges);
+        buffer.putInt(endLine);
+        buffer.putInt(sourceEnd);
+        buffer.putInt(interner.size());
+        buffer.asIntBuffer().put(starts, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().put(payloads, 0, size);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().put(lineChangeTokens, 0, lineChanges);
+        buffer.position(buffer.position() + lineChanges * 4);
+        buffer.asIntBuffer().put(lineChangeValues, 0, lineChanges);
+        buffer.position(buffer.position() + lineChanges * 4);
+        buffer.put(types, 0, size);
+
+        for (int id = 0; id < interner.size(); id++) {
+            String symbol = interner.symbol(id);
+            buffer.putInt(symbol.length());
+
+            for (int i = 0; i < symbol.length(); i++) {
+                buffer.put((byte) symbol.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Reads a stream written by serialise
+     * @param buffer buffer positioned at the serialised stream
+     * @param source source of the serialised stream
+     * @return token stream, with a new interner
+     */
+    static TokenStream deserialise(ByteBuffer buffer, char[] source) {
+        int size = buffer.getInt();
+        int lineChanges = buffer.getInt();
+        int endLine = buffer.getInt();
+        int sourceEnd = buffer.getInt();
+        int symbolCount = buffer.getInt();
+
+        if (size < 0 || lineChanges < 0 || symbolCount < 0 || sourceEnd > source.length
+                || (long) size * 9 + (long) lineChanges * 8 + (long) symbolCount * 4 > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid serialised token stream");
+        }
+
+        TokenStream tokens = new TokenStream(source, new SymbolInterner(), 0);
+        tokens.size = size;
+        tokens.lineChanges = lineChanges;
+        tokens.endLine = endLine;
+        tokens.sourceEnd = sourceEnd;
+        tokens.starts = new int[size];
+        tokens.payloads = new int[size];
+        tokens.lineChangeTokens = new int[lineChanges];
+        tokens.lineChangeValues = new int[lineChanges];
+        tokens.types = new byte[size];
+
+        buffer.asIntBuffer().get(tokens.starts);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().get(tokens.payloads);
+        buffer.position(buffer.position() + size * 4);
+        buffer.asIntBuffer().get(tokens.lineChangeTokens);
+        buffer.position(buffer.position() + lineChanges * 4);
+        buffer.asIntBuffer().get(tokens.lineChangeValues);
+        buffer.position(buffer.position() + lineChanges * 4);
+        buffer.get(tokens.types);
+
+        //Interning in id order gives every identifier its old id
+        char[] symbol = new char[64];
+
+        for (int id = 0; id < symbolCount; id++) {
+            int length = buffer.getInt();
+
+            if (length > symbol.length) {
+                symbol = new char[Math.max(length, symbol.length * 2)];
+            }
+
+            for (int i = 0; i < length; i++) {
+                symbol[i] = (char) buffer.get();
+            }
+
+            tokens.interner.intern(symbol, 0, length);
+        }
+
+        return tokens;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public char[] getSource() {
+        return source;
+    }
+
+    /**
+     * @return source of the stream as a piece table (the source is not copied)
+     */
+    PieceTable text() {
+        return new PieceTable(source, sourceEnd);
+    }
+
+    public SymbolInterner getInterner() {
+        return interner;
+    }
+
+    public TokenType tokenType(int index) {
+        return tokenTypes[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int payload(int index) {
+        return payloads[index];
+    }
+
+    public int intValue(int index) {
+        return payloads[index];
+    }
+
+    public float floatValue(int index) {
+        return Float.intBitsToFloat(payloads[index]);
+    }
+
+    /**
+     * Gets the line number of a token
+     * @param index index of the token
+     * @return line number reported by the lexer once the token was read
+     */
+    public int line(int index) {
+        int position = Arrays.binarySearch(lineChangeTokens, 0, lineChanges, index);
+
+        //When the token does not start a new line number, it belongs to the closest change before it
+        if (position < 0) {
+            position = -position - 2;
+        }
+
+        return lineChangeValues[position];
+    }
+
+    /**
+     * Gets the length of a lexeme, working it out from the token type when it is not stored
+     * @param index index of the token
+     * @return lexeme length
+     */
+    public int length(int index) {
+        TokenType tokenType = tokenType(index);
+
+        switch (tokenType) {
+            case IDENTIFIER:
+                return interner.symbol(payloads[index]).length();
+            case STRING:
+            case CHAR:
+                return payloads[index];
+            case NUM:
+            case REAL:
+                int end = skipDigits(starts[index]);
+
+                //Floats always have a single dot followed by digits
+                if (tokenType == TokenType.REAL) {
+                    end = skipDigits(end + 1);
+                }
+
+                return end - starts[index];
+            case LTE:
+            case GTE:
+            case NE:
+            case CMP:
+                return 2;
+            default:
+                if (isReservedWord(tokenType)) {
+                    return Lexer.reservedWordList[payloads[index]].lexeme.length();
+                }
+
+                return 1;
+        }
+    }
+
+    /**
+     * Checks whether the lexeme of a token spells the given characters, without creating a string
+     * @param index index of the token
+     * @param text text to compare with
+     * @return true if the lexeme is equal to text
+     */
+    public boolean lexemeEquals(int index, String text) {
+        int length = length(index);
+
+        if (text.length() != length) {
+            return false;
+        }
+
+        int start = starts[index];
+
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) != lexemeCharacter(source[start + i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates the string of a lexeme (as the lexer would read it, with tabs replaced by spaces)
+     * @param index index of the token
+     * @return lexeme string
+     */
+    public String lexeme(int index) {
+        int start = starts[index];
+        int length = length(index);
+        char[] characters = Arrays.copyOfRange(source, start, start + length);
+
+        for (int i = 0; i < length; i++) {
+            characters[i] = lexemeCharacter(characters[i]);
+        }
+
+        return new String(characters);
+    }
+
+    /**
+     * Creates the token object of a packed token (shared instances are used for keywords, symbols and operators)
+     * @param index index of the token
+     * @return token object
+     */
+    public Token token(int index) {
+        TokenType tokenType = tokenType(index);
+
+        switch (tokenType) {
+            case IDENTIFIER:
+                return interner.word(payloads[index]);
+            case STRING:
+            case CHAR:
+                return new Word(lexeme(index), tokenType);
+            case NUM:
+                return new WholeNumber(intValue(index));
+            case REAL:
+                return new Real(floatValue(index));
+            default:
+                if (isReservedWord(tokenType)) {
+                    return Lexer.reservedWordList[payloads[index]];
+                }
+
+                return Token.of(tokenType);
+        }
+    }
+
+    //Checks whether tokens of a type are keywords (their payload is the reserved word index)
+    private static boolean isReservedWord(TokenType tokenType) {
+        switch (tokenType) {
+            case TYPE:
+            case AND:
+            case ELSE:
+            case FALSE:
+            case FOR:
+            case IF:
+            case LET:
+            case NOT:
+            case OR:
+            case PRINT:
+            case RETURN:
+            case STRUCT:
+            case TRUE:
+            case WHILE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //Gets the offset of the first character which is not a digit, starting from position
+    private int skipDigits(int position) {
+        while (position < source.length && source[position] >= '0' && source[position] <= '9') {
+            position++;
+        }
+
+        return position;
+    }
+
+    //Tabs are read as spaces by the lexer
+    private static char lexemeCharacter(char character) {
+        return character == '\t' ? ' ' : character;
+    }
+}
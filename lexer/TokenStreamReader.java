@@ -0,0 +1,81 @@
+package lexer;
+
+//Reads the tokens of a packed token stream (or of a range of it) in order
+public class TokenStreamReader implements TokenSource {
+    private final TokenStream tokens;
+    private final int from;
+    private final int to;
+
+    //Index of the next token, to + 1 once the end of the range has been returned
+    private int tokenIndex;
+
+    public TokenStreamReader(TokenStream tokens) {
+        this(tokens, 0, tokens.size());
+    }
+
+    /**
+     * Reads the tokens from index from (inclusive) to index to (exclusive), then returns null as at the end of a file
+     * @param tokens packed token stream
+     * @param from index of the first token
+     * @param to index after the last token
+     */
+    public TokenStreamReader(TokenStream tokens, int from, int to) {
+        this.tokens = tokens;
+        this.from = from;
+        this.to = to;
+        tokenIndex = from;
+    }
+
+    @Override
+    public Token getNextToken() {
+        if (tokenIndex < to) {
+            return tokens.token(tokenIndex++);
+        }
+
+        //Moves past the last token so that the line number is the one after the range
+        tokenIndex = to + 1;
+        return null;
+    }
+
+    @Override
+    public int getLineNumber() {
+        if (tokenIndex > to) {
+            //The lexer would have read the next token (or the rest of the file) to find the end of the range
+            return to < tokens.size() ? tokens.line(to) : tokens.endLine;
+        } else if (tokenIndex == from) {
+            return from == 0 ? 1 : tokens.line(from - 1);
+        } else {
+            return tokens.line(tokenIndex - 1);
+        }
+    }
+
+    /**
+     * @return index of the next token
+     */
+    public int position() {
+        return tokenIndex;
+    }
+
+    /**
+     * @return index after the last token of the range
+     */
+    public int end() {
+        return to;
+    }
+
+    /**
+     * Continues reading from another token of the range
+     * @param index index of the next token
+     */
+    public void seek(int index) {
+        if (index < from || index > to) {
+            throw new IndexOutOfBoundsException("Token " + index + " is outside of " + from + " to " + to);
+        }
+
+        tokenIndex = index;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -18,8 +18,16 @@ public class Word extends Token {
 
     public String lexeme = "";
 
+    //Id given to identifiers by the lexer's SymbolInterner (-1 for anything else)
+    public final int symbolId;
+
     public Word(String word, TokenType tokenType) {
+        this(word, tokenType, -1);
+    }
+
+    public Word(String word, TokenType tokenType, int symbolId) {
         super(tokenType);
         lexeme = word;
+        this.symbolId = symbolId;
     }
 }
@@ -0,0 +1,712 @@
+package parser;
+
+import lexer.*;
+import visitors.ASTVisitor;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/*
+    Compact AST representation, where nodes are indices into parallel primitive arrays instead of objects
+    Nodes are stored in preorder, so the first child of a node is the node after it and its next sibling is the
+    node after its subtree. Every node only has a kind (with a flag for the last child of its parent), an int
+    payload (see the kinds below) and the size of its subtree. Names and string literals are kept once in a
+    string table. Missing optional children (like the expression of a declaration without a value) are NONE
+    nodes, so children are always at the same position.
+    Only ASTCursor walks the nodes in this form. The visitors work on object nodes, so using the arena with them
+    (through ASTProgram, statements, accept or materialise) is a conversion and not a view: it builds the whole
+    object subtree of every statement again each time the statement is read. The arena saves memory while it is
+    stored, serialised or walked with a cursor, and not on the semantic checking and interpretation path.
+ */
+public class ASTArena {
+    //Node kinds, with their payload and children
+    public final static int NONE = 0;                       //no payload, no children
+    public final static int PROGRAM = 1;                    //statements
+    public final static int BLOCK = 2;                      //statements
+    public final static int VARIABLE_DECLARATION = 3;       //type code; identifier, expression or NONE
+    public final static int ASSIGNMENT = 4;                 //identifier, expression
+    public final static int PRINT = 5;                      //expression
+    public final static int RETURN = 6;                     //expression
+    public final static int IF = 7;                         //condition, true block, false block or NONE
+    public final static int FOR = 8;                        //declaration or NONE, condition, assignment or NONE, block
+    public final static int WHILE = 9;                      //condition, block
+    public final static int FUNCTION_DECLARATION = 10;      //return type code; name, parameters, block
+    public final static int PARAMETER = 11;                 //type code; identifier
+    public final static int STRUCT = 12;                    //name, statements
+    public final static int BINARY_OPERATOR = 13;           //operator token type ordinal; two operands
+    public final static int UNARY = 14;                     //operator token type ordinal; operand
+    public final static int INT_LITERAL = 15;               //value
+    public final static int FLOAT_LITERAL = 16;             //float bits
+    public final static int BOOL_LITERAL = 17;              //1 for true, 0 for false
+    public final static int STRING_LITERAL = 18;            //string index (without quotes)
+    public final static int CHAR_LITERAL = 19;              //string index (without apostrophes)
+    public final static int ARRAY_LITERAL = 20;             //members
+    public final static int IDENTIFIER = 21;                //string index of the name
+    public final static int ARRAY_INDEX_IDENTIFIER = 22;    //string index of the name; index
+    public final static int STRUCT_VARIABLE_SELECTOR = 23;  //string index of the struct name; member identifier
+    public final static int STRUCT_FUNCTION_SELECTOR = 24;  //string index of the struct name; function call
+    public final static int FUNCTION_CALL = 25;             //identifier, parameters
+
+    //Flag in the kind byte of nodes which are the last child of their parent
+    private final static int LAST_CHILD = 0x80;
+
+    //Flag in the serialised kind byte of nodes which have children
+    private final static int HAS_CHILDREN = 0x40;
+
+    private static final TokenType[] tokenTypes = TokenType.values();
+
+    //Node arrays
+    private byte[] kinds = new byte[1024];
+    private int[] payloads = new int[1024];
+    private int[] subtreeSizes = new int[1024];
+    private int size = 0;
+
+    //String table, with the lexer's symbol id of identifiers (-1 for other strings)
+    private final List<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIndices = new HashMap<>();
+    private int[] stringSymbolIds = new int[64];
+
+    //Last top-level statement, so that statements can be appended one at a time
+    private int lastStatement = -1;
+
+    /**
+     * Creates an arena containing only the program node (node 0)
+     */
+    public ASTArena() {
+        addNode(PROGRAM, 0);
+    }
+
+    /**
+     * Stores a statement and its whole subtree, appending it to the program's statements
+     * @param statement statement to store
+     * @return node of the statement
+     */
+    public int addStatement(ASTStatement statement) throws Exception {
+        int node = flatten(statement);
+
+        if (lastStatement != -1) {
+            kinds[lastStatement] &= ~LAST_CHILD;
+        }
+
+        kinds[node] |= LAST_CHILD;
+        subtreeSizes[0] = size;
+        lastStatement = node;
+        return node;
+    }
+
+    /**
+     * Releases the unused capacity once no more nodes will be added
+     */
+    public void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        payloads = Arrays.copyOf(payloads, size);
+        subtreeSizes = Arrays.copyOf(subtreeSizes, size);
+        stringSymbolIds = Arrays.copyOf(stringSymbolIds, strings.size());
+    }
+
+    /**
+     * Gets the number of bytes written by serialise
+     * @return serialised size
+     */
+    public int serialisedSize() {
+        int stringBytes = 0;
+
+        for (String string : strings) {
+            stringBytes += 2 * 4 + string.length() * 2;
+        }
+
+        return 4 * 4 + size * 5 + stringBytes;
+    }
+
+    /*
+        Writes the arena in a compact binary form (used by ASTCache)
+        Counts and the last statement, then payloads as ints, then the kind of every node as a byte, then the string
+        table in index order: the length and symbol id of every string as ints, followed by the characters of all
+        strings. Kind bytes are flagged when the node has children, which is enough to work out the subtree sizes
+        again.
+     */
+    public void serialise(ByteBuffer buffer) {
+        int characterCount = 0;
+
+        for (String string : strings) {
+            characterCount += string.length();
+        }
+
+        buffer.putInt(size);
+        buffer.putInt(strings.size());
+        buffer.putInt(characterCount);
+        buffer.putInt(lastStatement);
+        buffer.asIntBuffer().put(payloads, 0, size);
+        buffer.position(buffer.position() + size * 4);
+
+        for (int node = 0; node < size; node++) {
+            buffer.put((byte) (subtreeSizes[node] > 1 ? kinds[node] | HAS_CHILDREN : kinds[node]));
+        }
+
+        for (String string : strings) {
+            buffer.putInt(string.length());
+        }
+
+        buffer.asIntBuffer().put(stringSymbolIds, 0, strings.size());
+        buffer.position(buffer.position() + strings.size() * 4);
+
+        for (String string : strings) {
+            for (int i = 0; i < string.length(); i++) {
+                buffer.putChar(string.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Reads an arena written by serialise
+     * @param buffer buffer positioned at the serialised arena
+     * @return arena with the same nodes and strings
+     */
+    public static ASTArena deserialise(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int characterCount = buffer.getInt();
+        int lastStatement = buffer.getInt();
+
+        if (size < 1 || stringCount < 0 || characterCount < 0 || lastStatement < -1 || lastStatement >= size
+                || (long) size * 5 + (long) stringCount * 8 + (long) characterCount * 2 > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid serialised AST");
+        }
+
+        ASTArena arena = new ASTArena();
+        arena.size = size;
+        arena.lastStatement = lastStatement;
+        arena.payloads = new int[size];
+        arena.subtreeSizes = new int[size];
+        arena.kinds = new byte[size];
+        arena.stringSymbolIds = new int[stringCount];
+
+        int[] lengths = new int[stringCount];
+        char[] characters = new char[characterCount];
+
+        buffer.asIntBuffer().get(arena.payloads);
+        buffer.position(buffer.position() + size * 4);
+        buffer.get(arena.kinds);
+        buffer.asIntBuffer().get(lengths);
+        buffer.position(buffer.position() + stringCount * 4);
+        buffer.asIntBuffer().get(arena.stringSymbolIds);
+        buffer.position(buffer.position() + stringCount * 4);
+        buffer.asCharBuffer().get(characters);
+        buffer.position(buffer.position() + characterCount * 2);
+
+        //A subtree ends at a leaf which is the last child of its parent (and of its parent's parent, and so on)
+        int[] openNodes = new int[64];
+        int depth = 0;
+
+        for (int node = 0; node < size; node++) {
+            if ((arena.kinds[node] & HAS_CHILDREN) != 0) {
+                arena.kinds[node] &= ~HAS_CHILDREN;
+
+                if (depth == openNodes.length) {
+                    openNodes = Arrays.copyOf(openNodes, depth * 2);
+                }
+
+                openNodes[depth++] = node;
+                continue;
+            }
+
+            arena.subtreeSizes[node] = 1;
+            int closedNode = node;
+
+            while (depth > 0 && (arena.kinds[closedNode] & LAST_CHILD) != 0) {
+                closedNode = openNodes[--depth];
+                arena.subtreeSizes[closedNode] = node + 1 - closedNode;
+            }
+        }
+
+        if (depth != 0 || arena.kind(0) != PROGRAM || arena.subtreeSizes[0] != size) {
+            throw new IllegalArgumentException("Invalid serialised AST");
+        }
+
+        int offset = 0;
+
+        for (int i = 0; i < stringCount; i++) {
+            if (lengths[i] < 0 || lengths[i] > characterCount - offset) {
+                throw new IllegalArgumentException("Invalid serialised AST");
+            }
+
+            arena.strings.add(new String(characters, offset, lengths[i]));
+            offset += lengths[i];
+        }
+
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int kind(int node) {
+        return kinds[node] & (LAST_CHILD - 1);
+    }
+
+    public int payload(int node) {
+        return payloads[node];
+    }
+
+    /**
+     * @param node parent node
+     * @return first child of the node, -1 if it has none
+     */
+    public int firstChild(int node) {
+        return subtreeSizes[node] > 1 ? node + 1 : -1;
+    }
+
+    /**
+     * @param node child node
+     * @return next child of the node's parent, -1 if it is the last one
+     */
+    public int nextSibling(int node) {
+        return node == 0 || (kinds[node] & LAST_CHILD) != 0 ? -1 : node + subtreeSizes[node];
+    }
+
+    /**
+     * @param node node
+     * @return number of nodes in the subtree of the node, including itself
+     */
+    public int subtreeSize(int node) {
+        return subtreeSizes[node];
+    }
+
+    /**
+     * Gets a child by position (this skips the subtrees of the children before it)
+     * @param node parent node
+     * @param index position of the child
+     * @return child node, -1 if there are not that many children
+     */
+    public int child(int node, int index) {
+        int child = firstChild(node);
+
+        for (int i = 0; i < index && child != -1; i++) {
+            child = nextSibling(child);
+        }
+
+        return child;
+    }
+
+    /**
+     * @param node parent node
+     * @return number of children of the node
+     */
+    public int childCount(int node) {
+        int count = 0;
+
+        for (int child = firstChild(node); child != -1; child = nextSibling(child)) {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @param node identifier or string/char literal node
+     * @return name or literal text of the node
+     */
+    public String string(int node) {
+        return strings.get(payloads[node]);
+    }
+
+    public float floatValue(int node) {
+        return Float.intBitsToFloat(payloads[node]);
+    }
+
+    public TokenType operator(int node) {
+        return tokenTypes[payloads[node]];
+    }
+
+    /**
+     * @param node variable declaration, parameter or function declaration node
+     * @return declared type of the node (a new object for arrays and struct types)
+     */
+    public Type type(int node) {
+        int typeCode = payloads[node];
+        String name = strings.get(typeCode >>> 2);
+        Type type;
+
+        if ((typeCode & 1) != 0) {
+            type = new Type(name, TokenType.COMPLEXTYPE);
+        } else {
+            type = primitiveType(name);
+        }
+
+        return (typeCode & 2) != 0 ? new Array(-1, type) : type;
+    }
+
+    /**
+     * Creates a cursor positioned at a node
+     * @param node starting node
+     * @return cursor
+     */
+    public ASTCursor cursor(int node) {
+        return new ASTCursor(this, node);
+    }
+
+    /**
+     * Converts the top-level statements to object nodes, each one with its whole subtree when it is read
+     * (reading the same statement twice builds it twice, so a visitor pass allocates the whole object AST)
+     * @return statements of the program
+     */
+    public List<ASTStatement> statements() {
+        return new AbstractList<ASTStatement>() {
+            private final int count = childCount(0);
+            private int cachedIndex = 0;
+            private int cachedNode = firstChild(0);
+
+            @Override
+            public ASTStatement get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Statement " + index + " of " + count);
+                }
+
+                //Statements are usually read in order, so the walk continues from the last one
+                if (index < cachedIndex) {
+                    cachedIndex = 0;
+                    cachedNode = firstChild(0);
+                }
+
+                for (; cachedIndex < index; cachedIndex++) {
+                    cachedNode = nextSibling(cachedNode);
+                }
+
+                return (ASTStatement) materialise(cachedNode);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Visits a node with a visitor of the object AST
+     * @param node node to visit
+     * @param visitor visitor
+     */
+    public void accept(int node, ASTVisitor visitor) throws Exception {
+        materialise(node).accept(visitor);
+    }
+
+    /**
+     * Creates the object node of an arena node, with its whole subtree
+     * @param node arena node
+     * @return object node (null for NONE nodes)
+     */
+    public ASTNode materialise(int node) {
+        switch (kind(node)) {
+            case NONE:
+                return null;
+            case PROGRAM:
+                return new ASTProgram(this);
+            case BLOCK:
+                return new ASTBlock(materialiseChildren(firstChild(node), ASTStatement.class));
+            case VARIABLE_DECLARATION:
+                return new ASTVariableDeclaration((ASTIdentifier) materialise(child(node, 0)), type(node),
+                        (ASTExpression) materialise(child(node, 1)));
+            case ASSIGNMENT:
+                return new ASTAssignment((ASTIdentifier) materialise(child(node, 0)), (ASTExpression) materialise(child(node, 1)));
+            case PRINT:
+                return new ASTPrint((ASTExpression) materialise(firstChild(node)));
+            case RETURN:
+                return new ASTReturn((ASTExpression) materialise(firstChild(node)));
+            case IF:
+                return new ASTIf((ASTExpression) materialise(child(node, 0)), (ASTBlock) materialise(child(node, 1)),
+                        (ASTBlock) materialise(child(node, 2)));
+            case FOR:
+                return new ASTFor((ASTVariableDeclaration) materialise(child(node, 0)), (ASTExpression) materialise(child(node, 1)),
+                        (ASTAssignment) materialise(child(node, 2)), (ASTBlock) materialise(child(node, 3)));
+            case WHILE:
+                return new ASTWhile((ASTExpression) materialise(child(node, 0)), (ASTBlock) materialise(child(node, 1)));
+            case FUNCTION_DECLARATION:
+                int functionName = firstChild(node);
+                List<ASTParameter> parameters = new ArrayList<>();
+                int child = nextSibling(functionName);
+
+                for (; nextSibling(child) != -1; child = nextSibling(child)) {
+                    parameters.add(new ASTParameter((ASTIdentifier) materialise(firstChild(child)), type(child)));
+                }
+
+                return new ASTFunctionDeclaration(type(node), (ASTIdentifier) materialise(functionName), parameters,
+                        (ASTBlock) materialise(child));
+            case STRUCT:
+                int structName = firstChild(node);
+                return new ASTStruct((ASTIdentifier) materialise(structName),
+                        materialiseChildren(nextSibling(structName), ASTStatement.class));
+            case BINARY_OPERATOR:
+                return new ASTBinaryOperator((ASTExpression) materialise(child(node, 0)), (ASTExpression) materialise(child(node, 1)),
+                        Token.of(operator(node)));
+            case UNARY:
+                return new ASTUnary(operator(node), (ASTExpression) materialise(firstChild(node)));
+            case INT_LITERAL:
+                return new ASTLiteral(new WholeNumber(payloads[node]), "int");
+            case FLOAT_LITERAL:
+                return new ASTLiteral(new Real(floatValue(node)), "float");
+            case BOOL_LITERAL:
+                return new ASTLiteral(payloads[node] == 1 ? Word.TRUE : Word.FALSE, "bool");
+            case STRING_LITERAL:
+                return new ASTLiteral(new Word(string(node), TokenType.STRING), "string");
+            case CHAR_LITERAL:
+                return new ASTLiteral(new Word(string(node), TokenType.CHAR), "char");
+            case ARRAY_LITERAL:
+                return new ASTArrayLiteral(materialiseChildren(firstChild(node), ASTExpression.class));
+            case IDENTIFIER:
+                return identifier(node);
+            case ARRAY_INDEX_IDENTIFIER:
+                return new ASTArrayIndexIdentifier(identifier(node), (ASTExpression) materialise(firstChild(node)));
+            case STRUCT_VARIABLE_SELECTOR:
+                return new ASTStructVariableSelector(identifier(node), (ASTIdentifier) materialise(firstChild(node)));
+            case STRUCT_FUNCTION_SELECTOR:
+                return new ASTStructFunctionSelector(identifier(node), (ASTFunctionCall) materialise(firstChild(node)));
+            case FUNCTION_CALL:
+                int functionIdentifier = firstChild(node);
+                return new ASTFunctionCall((ASTIdentifier) materialise(functionIdentifier),
+                        materialiseChildren(nextSibling(functionIdentifier), ASTExpression.class));
+            default:
+                throw new IllegalStateException("Unknown node kind " + kind(node));
+        }
+    }
+
+    //Creates the object nodes of a node and its following siblings
+    private <T extends ASTNode> List<T> materialiseChildren(int firstChild, Class<T> nodeClass) {
+        List<T> children = new ArrayList<>();
+
+        for (int child = firstChild; child != -1; child = nextSibling(child)) {
+            children.add(nodeClass.cast(materialise(child)));
+        }
+
+        return children;
+    }
+
+    //Creates a plain identifier from the name of an identifier or selector node
+    private ASTIdentifier identifier(int node) {
+        int stringIndex = payloads[node];
+        return new ASTIdentifier(new Word(strings.get(stringIndex), TokenType.IDENTIFIER, stringSymbolIds[stringIndex]));
+    }
+
+    //Stores a node and its subtree in preorder, returns its index
+    private int flatten(ASTNode astNode) throws Exception {
+        int node;
+
+        if (astNode == null) {
+            node = addNode(NONE, 0);
+        } else if (astNode instanceof ASTBlock) {
+            node = addNode(BLOCK, 0);
+            flattenAll(((ASTBlock) astNode).statements);
+        } else if (astNode instanceof ASTVariableDeclaration) {
+            ASTVariableDeclaration declaration = (ASTVariableDeclaration) astNode;
+            node = addNode(VARIABLE_DECLARATION, typeCode(declaration.type));
+            flatten(declaration.identifier);
+            flatten(declaration.expression);
+        } else if (astNode instanceof ASTAssignment) {
+            ASTAssignment assignment = (ASTAssignment) astNode;
+            node = addNode(ASSIGNMENT, 0);
+            flatten(assignment.identifier);
+            flatten(assignment.expression);
+        } else if (astNode instanceof ASTPrint) {
+            node = addNode(PRINT, 0);
+            flatten(((ASTPrint) astNode).expression);
+        } else if (astNode instanceof ASTReturn) {
+            node = addNode(RETURN, 0);
+            flatten(((ASTReturn) astNode).expression);
+        } else if (astNode instanceof ASTIf) {
+            ASTIf astIf = (ASTIf) astNode;
+            node = addNode(IF, 0);
+            flatten(astIf.conditionExpression);
+            flatten(astIf.trueBlock);
+            flatten(astIf.falseBlock);
+        } else if (astNode instanceof ASTFor) {
+            ASTFor astFor = (ASTFor) astNode;
+            node = addNode(FOR, 0);
+            flatten(astFor.variableDeclaration);
+            flatten(astFor.conditionExpression);
+            flatten(astFor.assignment);
+            flatten(astFor.loopedBlock);
+        } else if (astNode instanceof ASTWhile) {
+            ASTWhile astWhile = (ASTWhile) astNode;
+            node = addNode(WHILE, 0);
+            flatten(astWhile.conditionExpression);
+            flatten(astWhile.loopedBlock);
+        } else if (astNode instanceof ASTFunctionDeclaration) {
+            ASTFunctionDeclaration declaration = (ASTFunctionDeclaration) astNode;
+            node = addNode(FUNCTION_DECLARATION, typeCode(declaration.returnType));
+            flatten(declaration.functionName);
+
+            for (ASTParameter parameter : declaration.parameterList) {
+                int parameterNode = addNode(PARAMETER, typeCode(parameter.type));
+                flatten(parameter.identifier);
+                endNode(parameterNode);
+            }
+
+            flatten(declaration.getFunctionBlock());
+        } else if (astNode instanceof ASTStruct) {
+            ASTStruct struct = (ASTStruct) astNode;
+            node = addNode(STRUCT, 0);
+            flatten(struct.structName);
+            flattenAll(struct.statementsList);
+        } else if (astNode instanceof ASTBinaryOperator) {
+            ASTBinaryOperator operator = (ASTBinaryOperator) astNode;
+            node = addNode(BINARY_OPERATOR, operator.operator.tokenType.ordinal());
+            flatten(operator.expression1);
+            flatten(operator.expression2);
+        } else if (astNode instanceof ASTUnary) {
+            ASTUnary unary = (ASTUnary) astNode;
+            node = addNode(UNARY, unary.unaryType.ordinal());
+            flatten(unary.expression);
+        } else if (astNode instanceof ASTLiteral) {
+            node = addLiteral(((ASTLiteral) astNode).token);
+        } else if (astNode instanceof ASTArrayLiteral) {
+            node = addNode(ARRAY_LITERAL, 0);
+            flattenAll(((ASTArrayLiteral) astNode).arrayMembers);
+        } else if (astNode instanceof ASTArrayIndexIdentifier) {
+            ASTArrayIndexIdentifier identifier = (ASTArrayIndexIdentifier) astNode;
+            node = addNode(ARRAY_INDEX_IDENTIFIER, addString(identifier.identifier, identifier.symbolId));
+            flatten(identifier.index);
+        } else if (astNode instanceof ASTStructVariableSelector) {
+            ASTStructVariableSelector selector = (ASTStructVariableSelector) astNode;
+            node = addNode(STRUCT_VARIABLE_SELECTOR, addString(selector.identifier, selector.symbolId));
+            flatten(selector.elementIdentifier);
+        } else if (astNode instanceof ASTStructFunctionSelector) {
+            ASTStructFunctionSelector selector = (ASTStructFunctionSelector) astNode;
+            node = addNode(STRUCT_FUNCTION_SELECTOR, addString(selector.identifier, selector.symbolId));
+            flatten(selector.functionCall);
+        } else if (astNode instanceof ASTIdentifier) {
+            ASTIdentifier identifier = (ASTIdentifier) astNode;
+            node = addNode(IDENTIFIER, addString(identifier.identifier, identifier.symbolId));
+        } else if (astNode instanceof ASTFunctionCall) {
+            ASTFunctionCall call = (ASTFunctionCall) astNode;
+            node = addNode(FUNCTION_CALL, 0);
+            flatten(call.identifier);
+            flattenAll(call.parameters);
+        } else {
+            throw new IllegalArgumentException("Cannot store " + astNode.getClass().getSimpleName() + " in an arena");
+        }
+
+        endNode(node);
+        return node;
+    }
+
+    //Stores a list of nodes, one after the other
+    private void flattenAll(List<? extends ASTNode> astNodes) throws Exception {
+        for (ASTNode astNode : astNodes) {
+            flatten(astNode);
+        }
+    }
+
+    //Stores a literal (the quotes of string and char literals were already removed by ASTLiteral)
+    private int addLiteral(Token token) {
+        switch (token.tokenType) {
+            case NUM:
+                return addNode(INT_LITERAL, ((WholeNumber) token).value);
+            case REAL:
+                return addNode(FLOAT_LITERAL, Float.floatToIntBits(((Real) token).value));
+            case TRUE:
+                return addNode(BOOL_LITERAL, 1);
+            case FALSE:
+                return addNode(BOOL_LITERAL, 0);
+            case STRING:
+                return addNode(STRING_LITERAL, addString(((Word) token).lexeme, -1));
+            case CHAR:
+                return addNode(CHAR_LITERAL, addString(((Word) token).lexeme, -1));
+            default:
+                throw new IllegalArgumentException("Unknown literal " + token.tokenType);
+        }
+    }
+
+    /*
+        Encodes a type as an int: string index of the type name (of the element type for arrays) shifted left by two,
+        then a bit for arrays and a bit for struct types
+     */
+    private int typeCode(Type type) {
+        boolean isArray = type instanceof Array;
+        Type baseType = isArray ? ((Array) type).arrayType : type;
+        int typeCode = addString(baseType.lexeme, -1) << 2;
+
+        if (isArray) {
+            typeCode |= 2;
+        }
+
+        if (baseType.tokenType == TokenType.COMPLEXTYPE) {
+            typeCode |= 1;
+        }
+
+        return typeCode;
+    }
+
+    //Gets the shared instance of a primitive type
+    private static Type primitiveType(String name) {
+        switch (name) {
+            case "int": return Type.INTEGER;
+            case "float": return Type.FLOAT;
+            case "bool": return Type.BOOL;
+            case "string": return Type.STRING;
+            case "char": return Type.CHAR;
+            case "auto": return Type.AUTO;
+            default: throw new IllegalStateException("Unknown primitive type " + name);
+        }
+    }
+
+    //Gets the index of a string in the string table, adding it the first time
+    private int addString(String string, int symbolId) {
+        //Deserialised arenas only index their strings once more strings are added
+        for (int i = stringIndices.size(); i < strings.size(); i++) {
+            stringIndices.put(strings.get(i), i);
+        }
+
+        Integer index = stringIndices.get(string);
+
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            stringIndices.put(string, index);
+
+            if (index == stringSymbolIds.length) {
+                stringSymbolIds = Arrays.copyOf(stringSymbolIds, index * 2);
+            }
+
+            stringSymbolIds[index] = symbolId;
+        } else if (symbolId >= 0) {
+            stringSymbolIds[index] = symbolId;
+        }
+
+        return index;
+    }
+
+    //Appends a node without children
+    private int addNode(int kind, int payload) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            subtreeSizes = Arrays.copyOf(subtreeSizes, capacity);
+        }
+
+        kinds[size] = (byte) kind;
+        payloads[size] = payload;
+        subtreeSizes[size] = 1;
+        return size++;
+    }
+
+    //Closes a node once its children were added: sets its subtree size and flags its last child
+    private void endNode(int node) {
+        subtreeSizes[node] = size - node;
+
+        if (size - node > 1) {
+            int child = node + 1;
+
+            while (child + subtreeSizes[child] < size) {
+                child += subtreeSizes[child];
+            }
+
+            kinds[child] |= LAST_CHILD;
+        }
+    }
+}
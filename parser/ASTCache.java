@@ -0,0 +1,119 @@
+package parser;
+
+import lexer.CacheDirectory;
+import lexer.Lexer;
+import lexer.TokenCache;
+import lexer.TokenStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/*
+    On-disk cache of serialised ASTs (see ASTArena.serialise), so that unchanged sources are neither lexed nor
+    parsed again
+    Entries (see CacheDirectory) are checked against the lexer fingerprint and the parser version, so entries
+    written by another lexer or parser are ignored and replaced. Programs with errors are never stored.
+ */
+public class ASTCache {
+    //Default size cap of the cache directory
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x41535443;
+    private static final int FORMAT_VERSION = 1;
+    private static final String EXTENSION = ".ast";
+
+    private final CacheDirectory directory;
+
+    /**
+     * Uses (and creates if needed) a cache directory with the default size cap
+     * @param directory path of the cache directory
+     */
+    public ASTCache(String directory) throws IOException {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Uses (and creates if needed) a cache directory, deleting entries if it is over the size cap
+     * @param directory path of the cache directory
+     * @param maxSize maximum number of bytes kept in the directory
+     */
+    public ASTCache(String directory, long maxSize) throws IOException {
+        this.directory = new CacheDirectory(directory, maxSize, EXTENSION, MAGIC, FORMAT_VERSION);
+    }
+
+    /**
+     * Gets the AST of a program, from the cache when the same source was parsed before
+     * The statements are created once as object nodes, since the visitors of a compilation each walk the whole
+     * program. Storing an entry is best effort: when the cache directory cannot be written, the program is still
+     * parsed and returned.
+     * @param programPath path of the program
+     * @return program AST (the same as Parser.parseProgram() on the program)
+     * @throws Exception the lexical or syntax error in the program
+     */
+    public ASTProgram parse(String programPath) throws Exception {
+        byte[] bytes = Files.readAllBytes(Paths.get(programPath));
+
+        //The source is only decoded on a miss, so entries are checked against the length in bytes
+        Path entry = directory.entry(bytes);
+        ASTArena arena = load(entry, bytes.length);
+
+        if (arena != null) {
+            return new ASTProgram(new ArrayList<>(arena.statements()));
+        }
+
+        char[] source = TokenCache.decode(bytes);
+        ASTProgram program;
+
+        try {
+            TokenStream tokens = new Lexer(CharBuffer.wrap(source)).tokenise();
+            program = new Parser(tokens).parseProgram();
+        } catch (Exception e) {
+            //Lexing everything first can report a lexical error after a syntax error, so the first error is found again
+            return new Parser(new Lexer(CharBuffer.wrap(source))).parseProgram();
+        }
+
+        ASTArena newArena = new ASTArena();
+
+        for (ASTStatement statement : program.statements) {
+            newArena.addStatement(statement);
+        }
+
+        newArena.trim();
+
+        try {
+            directory.write(entry, fingerprint(), bytes.length, newArena.serialisedSize(), newArena::serialise);
+        } catch (IOException e) {
+            //The program is parsed again next time
+        }
+
+        return program;
+    }
+
+    //Identifies the code whose output is cached
+    private static int fingerprint() {
+        return 31 * Lexer.fingerprint() + Parser.VERSION;
+    }
+
+    //Reads the arena of a cache entry, null when it is missing, out of date or damaged
+    private ASTArena load(Path entry, int sourceLength) {
+        ByteBuffer buffer = directory.read(entry, fingerprint(), sourceLength);
+
+        if (buffer == null) {
+            return null;
+        }
+
+        try {
+            ASTArena arena = ASTArena.deserialise(buffer);
+            directory.touch(entry);
+            return arena;
+        } catch (RuntimeException e) {
+            directory.discard(entry);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package parser;
+
+import java.util.Arrays;
+
+/*
+    Walks the nodes of an ASTArena without creating object nodes
+    The cursor keeps the path from its starting node, so it can move back up to the parents it came through.
+ */
+public class ASTCursor {
+    private final ASTArena arena;
+    private int[] path = new int[16];
+    private int depth = 0;
+
+    /**
+     * @param arena arena containing the nodes
+     * @param node starting node
+     */
+    public ASTCursor(ASTArena arena, int node) {
+        this.arena = arena;
+        path[0] = node;
+    }
+
+    /**
+     * @return node the cursor is at
+     */
+    public int node() {
+        return path[depth];
+    }
+
+    /**
+     * @return kind of the node the cursor is at (one of the ASTArena kinds)
+     */
+    public int kind() {
+        return arena.kind(path[depth]);
+    }
+
+    public int payload() {
+        return arena.payload(path[depth]);
+    }
+
+    public ASTArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Moves to the first child of the current node
+     * @return false (without moving) if the node has no children
+     */
+    public boolean gotoFirstChild() {
+        int child = arena.firstChild(path[depth]);
+
+        if (child == -1) {
+            return false;
+        }
+
+        if (depth + 1 == path.length) {
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+
+        path[++depth] = child;
+        return true;
+    }
+
+    /**
+     * Moves to the next child of the current node's parent
+     * @return false (without moving) if the node is the last child, or the starting node
+     */
+    public boolean gotoNextSibling() {
+        int sibling = arena.nextSibling(path[depth]);
+
+        if (depth == 0 || sibling == -1) {
+            return false;
+        }
+
+        path[depth] = sibling;
+        return true;
+    }
+
+    /**
+     * Moves back to the parent of the current node
+     * @return false (without moving) at the starting node
+     */
+    public boolean gotoParent() {
+        if (depth == 0) {
+            return false;
+        }
+
+        depth--;
+        return true;
+    }
+
+    /**
+     * @return number of moves down from the starting node
+     */
+    public int depth() {
+        return depth;
+    }
+}
@@ -13,6 +13,9 @@ public class ASTFunctionDeclaration extends ASTStatement {
     public List<ASTParameter> parameterList;
     public ASTBlock functionBlock;
 
+    //Body which has not been parsed yet (null unless the function was parsed lazily and not used since)
+    private LazyFunctionBody lazyFunctionBody;
+
     /**
      * @param returnType stores the function's return type
      * @param functionName stores the function's name
@@ -33,6 +36,39 @@ public class ASTFunctionDeclaration extends ASTStatement {
         this.functionBlock = functionBlock;
     }
 
+    /**
+     * Used by the parser in lazy mode, the body is parsed by getFunctionBlock()
+     * @param returnType stores the function's return type
+     * @param functionName stores the function's name
+     * @param parameterList stores the formal parameter list
+     * @param lazyFunctionBody token range of the function's main block
+     */
+    ASTFunctionDeclaration(Type returnType, ASTIdentifier functionName, List<ASTParameter> parameterList, LazyFunctionBody lazyFunctionBody) {
+        this(returnType, functionName, parameterList, (ASTBlock) null);
+        this.lazyFunctionBody = lazyFunctionBody;
+    }
+
+    /**
+     * Gets the function's main block, parsing it first if the function was parsed lazily
+     * @return function block
+     * @throws Exception the syntax error in the function block
+     */
+    public ASTBlock getFunctionBlock() throws Exception {
+        if (lazyFunctionBody != null) {
+            functionBlock = lazyFunctionBody.parse();
+            lazyFunctionBody = null;
+        }
+
+        return functionBlock;
+    }
+
+    /**
+     * @return false if the function was parsed lazily and its main block has not been parsed since
+     */
+    public boolean isFunctionBlockParsed() {
+        return lazyFunctionBody == null;
+    }
+
     @Override
     public void accept(ASTVisitor visitor) throws Exception {
         visitor.visit(this);
@@ -7,12 +7,16 @@ import visitors.ASTVisitor;
 public class ASTIdentifier extends ASTExpression {
     public String identifier;
 
+    //Symbol id given by the lexer's SymbolInterner (-1 if the identifier was not interned)
+    public int symbolId;
+
     /**
      * Used in the constructor of ArrayIndexIdentifier and StructVariable/FunctionIdentifiers to set the array/struct identifier
      * @param identifier another identifier
      */
     public ASTIdentifier(ASTIdentifier identifier) {
         this.identifier = identifier.identifier;
+        this.symbolId = identifier.symbolId;
     }
 
     /**
@@ -20,6 +24,7 @@ public class ASTIdentifier extends ASTExpression {
      */
     public ASTIdentifier(Word lookaheadTemp) {
         this.identifier = lookaheadTemp.lexeme;
+        this.symbolId = lookaheadTemp.symbolId;
     }
 
     @Override
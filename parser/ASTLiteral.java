@@ -11,14 +11,14 @@ public class ASTLiteral extends ASTExpression {
     public String type;
 
     /**
-     * @param token the literal token
+     * @param token the literal token (not modified, string and character literals get a token without their marks)
      */
     public ASTLiteral(Token token) {
         //Setting the literal type
         if (token.tokenType == TokenType.STRING) {
             //Removing the quotation marks for strings
             String lexeme = ((Word) token).lexeme;
-            ((Word) token).lexeme = lexeme.substring(1, lexeme.length() - 1);
+            token = new Word(lexeme.substring(1, lexeme.length() - 1), TokenType.STRING);
             type = "string";
         } else if (token.tokenType == TokenType.NUM) {
             type = "int";
@@ -27,7 +27,7 @@ public class ASTLiteral extends ASTExpression {
         } else if (token.tokenType == TokenType.CHAR) {
             //Removing the apostrophe marks for characters
             String lexeme = ((Word) token).lexeme;
-            ((Word) token).lexeme = lexeme.substring(1, lexeme.length() - 1);
+            token = new Word(lexeme.substring(1, lexeme.length() - 1), TokenType.CHAR);
             type = "char";
         } else if (token.tokenType == TokenType.TRUE || token.tokenType == TokenType.FALSE) {
             type = "bool";
@@ -36,6 +36,16 @@ public class ASTLiteral extends ASTExpression {
         this.token = token;
     }
 
+    /**
+     * Used by ASTArena, where the quotation/apostrophe marks of strings and characters were already removed
+     * @param token the literal token
+     * @param type literal type
+     */
+    ASTLiteral(Token token, String type) {
+        this.token = token;
+        this.type = type;
+    }
+
     @Override
     public void accept(ASTVisitor visitor) throws Exception {
         visitor.visit(this);
@@ -9,11 +9,26 @@ import java.util.List;
 public class ASTProgram implements ASTNode {
     public List<ASTStatement> statements;
 
+    //Arena holding the program's nodes (null when the program is made of object nodes)
+    public final ASTArena arena;
+
     /**
      * @param statements statements of the whole program
      */
     public ASTProgram(List<ASTStatement> statements) {
         this.statements = new ArrayList<>(statements);
+        this.arena = null;
+    }
+
+    /**
+     * Program converted from an arena for the visitors, its statements are built as object nodes when they are read
+     * This is not a memory-saving view: every pass of a visitor builds the whole object AST again. Use ASTCursor to
+     * walk the arena without creating objects.
+     * @param arena arena containing the whole program
+     */
+    public ASTProgram(ASTArena arena) {
+        this.statements = arena.statements();
+        this.arena = arena;
     }
 
     @Override
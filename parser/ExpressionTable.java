@@ -0,0 +1,114 @@
+package parser;
+
+import lexer.Real;
+import lexer.Token;
+import lexer.TokenType;
+import lexer.WholeNumber;
+import lexer.Word;
+
+import java.util.*;
+
+/*
+    Hash-consing table of pure expressions (literals, and operators whose operands are pure), used by the parser
+    Structurally identical pure expressions are built once and shared, so a pure node is the same object wherever it
+    appears and always has the same value. Since the operands of a shared node are shared nodes themselves, they
+    are compared by identity, and a lookup only costs a hash of the operator and its operands. Expressions which
+    depend on the program state (identifiers, function calls, ...) are never shared, and neither are the operators
+    which contain them.
+ */
+public class ExpressionTable {
+    //Shared nodes, keyed by the token type and value of literals, or the operator and the nodes of the operands
+    private final Map<List<Object>, ASTExpression> nodes = new HashMap<>();
+
+    //The same nodes, to check whether a node is shared
+    private final Set<ASTExpression> sharedNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    //Number of pure nodes which were requested, including those which were shared
+    private int requests = 0;
+
+    /**
+     * Gets the shared literal node of a token
+     * @param token the literal token
+     * @return literal node
+     */
+    ASTLiteral literal(Token token) {
+        requests++;
+        return (ASTLiteral) nodes.computeIfAbsent(Arrays.asList(token.tokenType, value(token)),
+                key -> share(new ASTLiteral(token)));
+    }
+
+    /**
+     * Gets the shared binary operator node, or a new one when an operand is not pure
+     * @param expression1 first operand
+     * @param expression2 second operand
+     * @param operator token type of the operator
+     * @return binary operator node
+     */
+    ASTBinaryOperator binaryOperator(ASTExpression expression1, ASTExpression expression2, TokenType operator) {
+        if (!isPure(expression1) || !isPure(expression2)) {
+            return new ASTBinaryOperator(expression1, expression2, Token.of(operator));
+        }
+
+        requests++;
+
+        return (ASTBinaryOperator) nodes.computeIfAbsent(Arrays.asList(operator, expression1, expression2),
+                key -> share(new ASTBinaryOperator(expression1, expression2, Token.of(operator))));
+    }
+
+    /**
+     * Gets the shared unary node, or a new one when the operand is not pure
+     * @param unaryType unary operator
+     * @param expression operand
+     * @return unary node
+     */
+    ASTUnary unary(TokenType unaryType, ASTExpression expression) {
+        if (!isPure(expression)) {
+            return new ASTUnary(unaryType, expression);
+        }
+
+        requests++;
+
+        return (ASTUnary) nodes.computeIfAbsent(Arrays.asList(unaryType, expression),
+                key -> share(new ASTUnary(unaryType, expression)));
+    }
+
+    /**
+     * Checks whether an expression is a shared node of this table, whose value does not depend on the program state
+     * @param expression expression node
+     * @return true if the node is shared
+     */
+    public boolean isPure(ASTExpression expression) {
+        return sharedNodes.contains(expression);
+    }
+
+    /**
+     * @return number of shared nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * @return number of pure nodes which were requested by the parser, including those which were shared
+     */
+    public int requests() {
+        return requests;
+    }
+
+    //Records a node which was added to the table
+    private ASTExpression share(ASTExpression expression) {
+        sharedNodes.add(expression);
+        return expression;
+    }
+
+    //Gets the value which identifies a literal token (strings and characters still have their quotation marks)
+    private static Object value(Token token) {
+        if (token instanceof WholeNumber) {
+            return ((WholeNumber) token).value;
+        } else if (token instanceof Real) {
+            return ((Real) token).value;
+        } else {
+            return ((Word) token).lexeme;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package parser;
+
+import lexer.IncrementalLexer;
+import lexer.TokenStream;
+import lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/*
+    Keeps the AST of a program up to date while its source is edited
+    The token range of every statement and block is recorded while parsing. After an edit, only the statements
+    next to the changed tokens, in the innermost block (or the program) containing them, are parsed again. They are
+    replaced in the same statement list, so all the other nodes (including that block and its ancestors) stay the
+    same objects, and the replaced statements whose tokens did not change are kept as they were.
+    The whole program is parsed again when the edit changes which structs are declared (since struct names change
+    how the rest of the program is parsed), or when the statements cannot be parsed on their own.
+ */
+public class IncrementalParser {
+    //Statements replaced by an edit
+    public static class Result {
+        //Statement list which changed (the statements of the program or of a block)
+        public final List<ASTStatement> statements;
+
+        //Index in statements where the removed statements were and the inserted ones are
+        public final int firstStatement;
+
+        //Statements which were removed from the list
+        public final List<ASTStatement> removedStatements;
+
+        //Statements which were added to the list (statements which were kept are in neither list)
+        public final List<ASTStatement> insertedStatements;
+
+        //Whether the whole program was parsed again
+        public final boolean reparsedProgram;
+
+        private Result(List<ASTStatement> statements, int firstStatement, List<ASTStatement> removedStatements,
+                       List<ASTStatement> insertedStatements, boolean reparsedProgram) {
+            this.statements = statements;
+            this.firstStatement = firstStatement;
+            this.removedStatements = removedStatements;
+            this.insertedStatements = insertedStatements;
+            this.reparsedProgram = reparsedProgram;
+        }
+    }
+
+    private final ASTProgram program;
+    private TokenStream tokens;
+
+    //Token range (start, end) of every statement and block in the program
+    private IdentityHashMap<ASTNode, int[]> spans = new IdentityHashMap<>();
+
+    //Index of the struct keyword and symbol id of the name of every struct declaration, in source order
+    private int[] structTokens = new int[0];
+    private int[] structSymbols = new int[0];
+
+    //Whether the program is the AST of the current tokens (false after a syntax error)
+    private boolean isValid = false;
+
+    /**
+     * Parses a whole program
+     * @param tokens packed token stream of the program
+     * @throws Exception the syntax error in the program
+     */
+    public IncrementalParser(TokenStream tokens) throws Exception {
+        this.tokens = tokens;
+        program = new ASTProgram(new ArrayList<>());
+        reparseProgram(tokens);
+    }
+
+    /**
+     * @return the program AST (the same object after every edit)
+     */
+    public ASTProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * @return false if the last edit gave a program with a syntax error (the AST is then the one before the edit)
+     */
+    public boolean isValid() {
+        return isValid;
+    }
+
+    /**
+     * Updates the AST after an edit
+     * @param edit new token stream and changed token range, from IncrementalLexer.relex() on the current tokens
+     * @return the statements which changed
+     * @throws Exception the syntax error which Parser.parseProgram() reports on the edited program
+     */
+    public Result reparse(IncrementalLexer.Result edit) throws Exception {
+        if (!isValid) {
+            return reparseProgram(edit.tokens);
+        }
+
+        int first = edit.firstChangedToken;
+        int oldEnd = edit.oldEndToken;
+        int shift = edit.newEndToken - edit.oldEndToken;
+
+        //Finds the innermost statement list containing the edit, and its statements next to the changed tokens
+        List<ASTStatement> statements = program.statements;
+        int firstStatement;
+        int lastStatement;
+
+        while (true) {
+            //Statements ending at or after the token before the edit, and starting at or before the token after it
+            firstStatement = firstEndingFrom(statements, first);
+            lastStatement = firstStatement;
+
+            while (lastStatement < statements.size() && spans.get(statements.get(lastStatement))[0] <= oldEnd) {
+                lastStatement++;
+            }
+
+            ASTBlock innerBlock = null;
+
+            if (lastStatement - firstStatement == 1) {
+                for (ASTBlock block : childBlocks(statements.get(firstStatement))) {
+                    int[] span = spans.get(block);
+
+                    //The changed tokens have to be between the curly brackets
+                    if (span[0] < first && oldEnd < span[1]) {
+                        innerBlock = block;
+                    }
+                }
+            }
+
+            if (innerBlock == null) {
+                break;
+            }
+
+            statements = innerBlock.statements;
+        }
+
+        List<ASTStatement> oldStatements = new ArrayList<>(statements.subList(firstStatement, lastStatement));
+        int regionStart = first;
+        int regionEnd = oldEnd;
+
+        if (!oldStatements.isEmpty()) {
+            regionStart = Math.min(regionStart, spans.get(oldStatements.get(0))[0]);
+            regionEnd = Math.max(regionEnd, spans.get(oldStatements.get(oldStatements.size() - 1))[1]);
+        }
+
+        //Structs declared before the region, and in the region before and after the edit
+        int structsBefore = firstStructFrom(regionStart);
+        int structsInRegion = firstStructFrom(regionEnd) - structsBefore;
+        List<Integer> newStructTokens = findStructs(edit.tokens, regionStart, regionEnd + shift);
+
+        if (newStructTokens.size() != structsInRegion) {
+            return reparseProgram(edit.tokens);
+        }
+
+        for (int i = 0; i < structsInRegion; i++) {
+            if (edit.tokens.payload(newStructTokens.get(i) + 1) != structSymbols[structsBefore + i]) {
+                return reparseProgram(edit.tokens);
+            }
+        }
+
+        BitSet definedStructs = new BitSet();
+
+        for (int i = 0; i < structsBefore; i++) {
+            definedStructs.set(structSymbols[i]);
+        }
+
+        IdentityHashMap<ASTNode, int[]> newSpans = new IdentityHashMap<>();
+        List<ASTStatement> newStatements;
+
+        try {
+            newStatements = Parser.parseStatements(edit.tokens, regionStart, regionEnd + shift, definedStructs, newSpans);
+        } catch (Exception e) {
+            //The error can depend on the tokens after the region, so it is reported by parsing the whole program
+            return reparseProgram(edit.tokens);
+        }
+
+        //Keeps the old statements whose tokens are all before or all after the changed tokens
+        List<ASTStatement> removedStatements = new ArrayList<>(oldStatements);
+        List<ASTStatement> insertedStatements = new ArrayList<>();
+
+        for (int i = 0; i < newStatements.size(); i++) {
+            ASTStatement newStatement = newStatements.get(i);
+            int[] span = newSpans.get(newStatement);
+            ASTStatement oldStatement = null;
+
+            if (span[1] <= first) {
+                oldStatement = findStatement(oldStatements, span[0], span[1]);
+            } else if (span[0] >= edit.newEndToken) {
+                oldStatement = findStatement(oldStatements, span[0] - shift, span[1] - shift);
+            }
+
+            if (oldStatement != null && oldStatement.getClass() == newStatement.getClass()) {
+                removedStatements.remove(oldStatement);
+                forget(newStatement, newSpans);
+                newStatements.set(i, oldStatement);
+            } else {
+                insertedStatements.add(newStatement);
+            }
+        }
+
+        for (ASTStatement removedStatement : removedStatements) {
+            forget(removedStatement, spans);
+        }
+
+        //Moves the ranges after the edit, then adds the ranges of the new nodes
+        for (int[] span : spans.values()) {
+            if (span[0] >= oldEnd) {
+                span[0] += shift;
+            }
+
+            if (span[1] > first) {
+                span[1] += shift;
+            }
+        }
+
+        spans.putAll(newSpans);
+
+        statements.subList(firstStatement, lastStatement).clear();
+        statements.addAll(firstStatement, newStatements);
+
+        tokens = edit.tokens;
+        updateStructs(structsBefore, structsInRegion, newStructTokens, shift);
+
+        return new Result(statements, firstStatement, removedStatements, insertedStatements, false);
+    }
+
+    //Parses the whole program, keeping the ASTProgram object
+    private Result reparseProgram(TokenStream newTokens) throws Exception {
+        tokens = newTokens;
+        isValid = false;
+
+        IdentityHashMap<ASTNode, int[]> newSpans = new IdentityHashMap<>();
+        List<ASTStatement> newStatements = Parser.parseStatements(newTokens, 0, newTokens.size(), new BitSet(), newSpans);
+        List<ASTStatement> removedStatements = new ArrayList<>(program.statements);
+
+        program.statements.clear();
+        program.statements.addAll(newStatements);
+        spans = newSpans;
+
+        List<Integer> newStructTokens = findStructs(newTokens, 0, newTokens.size());
+        structTokens = new int[0];
+        structSymbols = new int[0];
+        updateStructs(0, 0, newStructTokens, 0);
+
+        isValid = true;
+        return new Result(program.statements, 0, removedStatements, newStatements, true);
+    }
+
+    //Gets the index of the first statement ending at or after a token (statements are in source order)
+    private int firstEndingFrom(List<ASTStatement> statements, int token) {
+        int low = 0;
+        int high = statements.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (spans.get(statements.get(middle))[1] < token) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    //Finds the statement with the given token range, null if there is none
+    private ASTStatement findStatement(List<ASTStatement> statements, int start, int end) {
+        for (ASTStatement statement : statements) {
+            int[] span = spans.get(statement);
+
+            if (span[0] == start && span[1] == end) {
+                return statement;
+            }
+        }
+
+        return null;
+    }
+
+    //Gets the blocks whose statements are directly part of a statement
+    private static List<ASTBlock> childBlocks(ASTStatement statement) throws Exception {
+        List<ASTBlock> blocks = new ArrayList<>();
+
+        if (statement instanceof ASTBlock) {
+            blocks.add((ASTBlock) statement);
+        } else if (statement instanceof ASTIf) {
+            blocks.add(((ASTIf) statement).trueBlock);
+
+            if (((ASTIf) statement).falseBlock != null) {
+                blocks.add(((ASTIf) statement).falseBlock);
+            }
+        } else if (statement instanceof ASTFor) {
+            blocks.add(((ASTFor) statement).loopedBlock);
+        } else if (statement instanceof ASTWhile) {
+            blocks.add(((ASTWhile) statement).loopedBlock);
+        } else if (statement instanceof ASTFunctionDeclaration) {
+            blocks.add(((ASTFunctionDeclaration) statement).getFunctionBlock());
+        } else if (statement instanceof ASTStruct) {
+            for (ASTStatement member : ((ASTStruct) statement).statementsList) {
+                if (member instanceof ASTFunctionDeclaration) {
+                    blocks.add(((ASTFunctionDeclaration) member).getFunctionBlock());
+                }
+            }
+        }
+
+        return blocks;
+    }
+
+    //Removes the ranges of a statement and of the statements and blocks in it
+    private static void forget(ASTStatement statement, IdentityHashMap<ASTNode, int[]> spans) throws Exception {
+        spans.remove(statement);
+
+        for (ASTBlock block : childBlocks(statement)) {
+            spans.remove(block);
+
+            for (ASTStatement blockStatement : block.statements) {
+                forget(blockStatement, spans);
+            }
+        }
+    }
+
+    //Gets the number of struct declarations before a token
+    private int firstStructFrom(int token) {
+        int index = Arrays.binarySearch(structTokens, token);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    //Finds the struct keywords followed by a name in a range of tokens (which are struct declarations when it parses)
+    private static List<Integer> findStructs(TokenStream tokens, int from, int to) {
+        List<Integer> found = new ArrayList<>();
+
+        for (int i = from; i < to - 1; i++) {
+            if (tokens.tokenType(i) == TokenType.STRUCT && tokens.tokenType(i + 1) == TokenType.IDENTIFIER) {
+                found.add(i);
+            }
+        }
+
+        return found;
+    }
+
+    //Replaces the struct declarations of a region with the ones found in the current tokens, moving the ones after it
+    private void updateStructs(int structsBefore, int structsInRegion, List<Integer> newStructTokens, int shift) {
+        int structsAfter = structTokens.length - structsBefore - structsInRegion;
+        int[] newTokens = new int[structsBefore + newStructTokens.size() + structsAfter];
+        int[] newSymbols = new int[newTokens.length];
+
+        System.arraycopy(structTokens, 0, newTokens, 0, structsBefore);
+        System.arraycopy(structSymbols, 0, newSymbols, 0, structsBefore);
+
+        for (int i = 0; i < newStructTokens.size(); i++) {
+            int token = newStructTokens.get(i);
+            newTokens[structsBefore + i] = token;
+            newSymbols[structsBefore + i] = tokens.payload(token + 1);
+        }
+
+        for (int i = 0; i < structsAfter; i++) {
+            int oldIndex = structsBefore + structsInRegion + i;
+            int newIndex = structsBefore + newStructTokens.size() + i;
+            newTokens[newIndex] = structTokens[oldIndex] + shift;
+            newSymbols[newIndex] = structSymbols[oldIndex];
+        }
+
+        structTokens = newTokens;
+        structSymbols = newSymbols;
+    }
+}
@@ -0,0 +1,41 @@
+package parser;
+
+import lexer.TokenStream;
+
+import java.util.BitSet;
+
+//Token range of a function body which is parsed when the function is first used
+class LazyFunctionBody {
+    private final TokenStream tokens;
+    private final int from;
+    private final int to;
+
+    //Structs declared before the function, shared with the other bodies skipped since the last struct
+    private final BitSet definedStructs;
+
+    //Whether expressions are parsed with an explicit stack, like in the rest of the program
+    private final boolean iterativeExpressions;
+
+    /**
+     * @param tokens packed token stream of the program
+     * @param from index of the opening curly bracket of the body
+     * @param to index after the closing curly bracket of the body
+     * @param definedStructs structs declared before the function
+     * @param iterativeExpressions whether expressions are parsed with an explicit stack
+     */
+    LazyFunctionBody(TokenStream tokens, int from, int to, BitSet definedStructs, boolean iterativeExpressions) {
+        this.tokens = tokens;
+        this.from = from;
+        this.to = to;
+        this.definedStructs = definedStructs;
+        this.iterativeExpressions = iterativeExpressions;
+    }
+
+    /**
+     * Parses the body, giving the same node (or syntax error) as parsing it with the rest of the program
+     * @return ASTBlock node of the body
+     */
+    ASTBlock parse() throws Exception {
+        return Parser.parseFunctionBody(tokens, from, to, definedStructs, iterativeExpressions);
+    }
+}
@@ -0,0 +1,180 @@
+package parser;
+
+import lexer.TokenStream;
+import lexer.TokenStreamReader;
+import lexer.TokenType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+//Splits the top-level statements of a program into chunks which are parsed in parallel, giving the same AST as Parser.parseProgram()
+public class ParallelParser {
+    //Default minimum number of tokens per chunk
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    private final TokenStream tokens;
+
+    /**
+     * @param tokens packed token stream of the whole program
+     */
+    public ParallelParser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses the program on the common fork join pool with the default chunk size
+     * @return returns the full program AST
+     */
+    public ASTProgram parseProgram() throws Exception {
+        return parseProgram(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Parses the program in chunks of roughly chunkSize tokens on the given pool
+     * @param pool pool which runs the chunk parsers
+     * @param chunkSize minimum number of tokens in a chunk
+     * @return returns the full program AST (the same as Parser.parseProgram())
+     * @throws Exception the syntax error which the sequential parser reports
+     */
+    public ASTProgram parseProgram(ForkJoinPool pool, int chunkSize) throws Exception {
+        List<Chunk> chunks = findChunks(chunkSize);
+
+        if (chunks.size() == 1) {
+            return new Parser(tokens).parseProgram();
+        }
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+
+        for (Chunk chunk : chunks) {
+            tasks.add(pool.submit(chunk::parse));
+        }
+
+        List<ASTStatement> statements = new ArrayList<>();
+
+        for (int i = 0; i < chunks.size(); i++) {
+            tasks.get(i).join();
+            Chunk chunk = chunks.get(i);
+
+            /*
+                Line numbers in errors depend on the tokens after the chunk, so the sequential parser is run again
+                to report the error exactly as it would without chunks
+             */
+            if (chunk.error != null) {
+                for (ForkJoinTask<?> task : tasks) {
+                    task.cancel(false);
+                }
+
+                return new Parser(tokens).parseProgram();
+            }
+
+            statements.addAll(chunk.statements);
+        }
+
+        return new ASTProgram(statements);
+    }
+
+    /*
+        Finds the chunks with a single scan over the token types
+        A chunk can only end between two top-level statements: after a semicolon or closing curly bracket which is
+        outside all brackets, and before a token which can only start a statement there (which rules out else and
+        the rest of an expression after an array literal). Every chunk is given the structs declared in the chunks
+        before it, since struct names change how identifiers are parsed.
+     */
+    private List<Chunk> findChunks(int chunkSize) {
+        List<Chunk> chunks = new ArrayList<>();
+        BitSet declaredStructs = new BitSet();
+        BitSet structsBeforeChunk = new BitSet();
+        int chunkStart = 0;
+        int roundDepth = 0;
+        int curlyDepth = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType tokenType = tokens.tokenType(i);
+
+            if (i - chunkStart >= chunkSize && roundDepth == 0 && curlyDepth == 0 && isStatementEnd(tokens.tokenType(i - 1))
+                    && isStatementStart(tokenType)) {
+                chunks.add(new Chunk(chunkStart, i, structsBeforeChunk));
+                structsBeforeChunk = (BitSet) declaredStructs.clone();
+                chunkStart = i;
+            }
+
+            switch (tokenType) {
+                case OPENROUNDBRACKET:
+                    roundDepth++;
+                    break;
+                case CLOSEROUNDBRACKET:
+                    roundDepth--;
+                    break;
+                case OPENCURLYBRACKET:
+                    curlyDepth++;
+                    break;
+                case CLOSECURLYBRACKET:
+                    curlyDepth--;
+                    break;
+                case STRUCT:
+                    //The parser only accepts a struct keyword when it is followed by the struct name
+                    if (i + 1 < tokens.size() && tokens.tokenType(i + 1) == TokenType.IDENTIFIER) {
+                        declaredStructs.set(tokens.payload(i + 1));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        chunks.add(new Chunk(chunkStart, tokens.size(), structsBeforeChunk));
+        return chunks;
+    }
+
+    private static boolean isStatementEnd(TokenType tokenType) {
+        return tokenType == TokenType.SEMICOLON || tokenType == TokenType.CLOSECURLYBRACKET;
+    }
+
+    //Tokens which start a statement (an identifier starts an assignment or a function returning a struct)
+    private static boolean isStatementStart(TokenType tokenType) {
+        switch (tokenType) {
+            case LET:
+            case IDENTIFIER:
+            case PRINT:
+            case IF:
+            case FOR:
+            case WHILE:
+            case RETURN:
+            case TYPE:
+            case OPENCURLYBRACKET:
+            case STRUCT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //Range of top-level statements which is parsed by its own parser
+    private class Chunk {
+        private final int start;
+        private final int end;
+        private final BitSet definedStructs;
+
+        private List<ASTStatement> statements;
+        private Exception error;
+
+        private Chunk(int start, int end, BitSet definedStructs) {
+            this.start = start;
+            this.end = end;
+            this.definedStructs = definedStructs;
+        }
+
+        //Parses the chunk, keeping the syntax error (if any) for the joining thread
+        private void parse() {
+            try {
+                Parser parser = new Parser(new TokenStreamReader(tokens, start, end), definedStructs);
+                statements = parser.parseProgram().statements;
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+    }
+}
@@ -4,14 +4,17 @@ import lexer.*;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
 
-@SuppressWarnings("rawtypes")
 public class Parser {
-    //Stores the lexer (to call getNextToken())
-    private final Lexer lexer;
+    //Version of the parser's output, increase it when a change to the parser code changes the AST of some source
+    public static final int VERSION = 1;
+
+    //Stores the lexer or other token source (to call getNextToken())
+    private final TokenSource lexer;
 
     //Stores the parser lookahead
     private Token lookahead;
@@ -19,19 +22,152 @@ public class Parser {
     //Stores whether or not the current lookahead has already been consumed
     private boolean lookaheadUsed = true;
 
+    //Number of tokens read from the token source (including the lookahead)
+    private int tokensRead = 0;
+
     //Used to prevent variable declarations with complex types in structs
     private boolean isStruct = false;
 
-    //Stores the structs which exist (to change identifier to type)
-    private final Set<String> definedStructs;
+    //Stores the structs which exist (to change identifier to type), indexed by symbol id
+    private final BitSet definedStructs;
+
+    //Copy of definedStructs shared by the lazy function bodies parsed since the last struct (null if out of date)
+    private BitSet definedStructsCopy;
+
+    //Packed token stream read by the lexer field (null when reading from another token source)
+    private final TokenStream tokens;
+
+    //Whether function bodies are skipped and parsed when they are first used
+    private boolean lazyFunctionBodies = false;
+
+    //Whether expressions are parsed with an explicit stack instead of recursive calls
+    private boolean iterativeExpressions = false;
+
+    //Table sharing structurally identical pure expressions (null if every expression gets its own nodes)
+    private ExpressionTable expressionTable;
+
+    //Explicit stack of the iterative expression parser, one frame per parseExpression(int) call of the recursive parser
+    //(shared with the expressions nested in function call arguments, array indices and array literals)
+    private int[] frameBindingPowers = new int[16];     //minimum binding power of the frame
+    private TokenType[] frameOpeners = new TokenType[16]; //'(', '-' or 'not' before the frame, null for right operands
+    private ASTExpression[] frameOperands = new ASTExpression[16]; //expression parsed so far (null before the first factor)
+    private TokenType[] frameOperators = new TokenType[16]; //operator waiting for its right operand
+    private int frameCount = 0;
+
+    //Token range (start, end) of every statement and block parsed, used by IncrementalParser (null if not recorded)
+    private IdentityHashMap<ASTNode, int[]> spans;
+
+    //When recovering, syntax errors are recorded instead of thrown and parsing goes on at the next synchronisation point
+    private boolean recovering = false;
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    //Whether an error at the end of the file was recorded (enclosing blocks would report the same error again)
+    private boolean endOfFileReported = false;
+
+    //Binding power of the loosest binary operators
+    private static final int LOWEST_BINDING_POWER = 1;
+
+    //Binding power of binary operators indexed by token type (0 for other tokens), higher binds more tightly
+    private static final int[] bindingPowers = new int[TokenType.values().length];
+
+    static {
+        //Relational operators
+        setBindingPower(1, TokenType.LT, TokenType.LTE, TokenType.GT, TokenType.GTE, TokenType.CMP, TokenType.NE);
+
+        //Additive operators
+        setBindingPower(2, TokenType.ADD, TokenType.SUB, TokenType.OR);
+
+        //Multiplicative operators
+        setBindingPower(3, TokenType.MUL, TokenType.DIV, TokenType.AND);
+    }
 
     /**
      * Main parser constructor
-     * @param lexer the lexer that the parser will use
+     * @param lexer the lexer (or other token source) that the parser will use
+     */
+    public Parser(TokenSource lexer) {
+        this(lexer, null, new BitSet());
+    }
+
+    /**
+     * Creates a parser which reads an already tokenised program
+     * @param tokens the packed token stream that the parser will use
      */
-    public Parser(Lexer lexer) {
+    public Parser(TokenStream tokens) {
+        this(new TokenStreamReader(tokens), tokens, new BitSet());
+    }
+
+    /**
+     * Creates a parser which continues after other statements, used by ParallelParser
+     * @param lexer the token source that the parser will use
+     * @param definedStructs symbol ids of the structs declared before the first token
+     */
+    Parser(TokenSource lexer, BitSet definedStructs) {
+        this(lexer, null, definedStructs);
+    }
+
+    /**
+     * @param lexer the token source that the parser will use
+     * @param tokens the packed token stream which lexer reads (null if lexer is not a TokenStreamReader)
+     * @param definedStructs symbol ids of the structs declared before the first token
+     */
+    private Parser(TokenSource lexer, TokenStream tokens, BitSet definedStructs) {
         this.lexer = lexer;
-        definedStructs = new HashSet<>();
+        this.tokens = tokens;
+        this.definedStructs = definedStructs;
+    }
+
+    /**
+     * Enables or disables lazy parsing of function bodies (only for parsers reading a packed token stream)
+     * In lazy mode the body of a function is skipped and only parsed when it is first used, through
+     * ASTFunctionDeclaration.getFunctionBlock(), which then throws the syntax error in it (if any).
+     * @param lazyFunctionBodies true to parse function bodies when they are first used
+     */
+    public void setLazyFunctionBodies(boolean lazyFunctionBodies) {
+        if (lazyFunctionBodies && tokens == null) {
+            throw new IllegalStateException("Function bodies can only be parsed lazily from a packed token stream");
+        }
+
+        this.lazyFunctionBodies = lazyFunctionBodies;
+    }
+
+    /**
+     * Enables or disables parsing expressions with an explicit stack
+     * In this mode nested brackets, unary operators and operator chains are parsed without recursive calls, so their
+     * nesting depth is only limited by the heap and not by the size of the thread stack. The AST is the same.
+     * @param iterativeExpressions true to parse expressions with an explicit stack
+     */
+    public void setIterativeExpressions(boolean iterativeExpressions) {
+        this.iterativeExpressions = iterativeExpressions;
+    }
+
+    /**
+     * Enables or disables hash-consing of pure expressions (literals, and operators whose operands are pure)
+     * Structurally identical pure expressions are then parsed into the same shared node, which must not be
+     * modified. Other expressions, and lazily parsed function bodies, still get their own nodes.
+     * @param expressionTable table of the shared nodes (it can be shared by several parsers), null to disable
+     */
+    public void setExpressionTable(ExpressionTable expressionTable) {
+        this.expressionTable = expressionTable;
+    }
+
+    /**
+     * Switches recovery mode on or off
+     * In recovery mode every syntax error is recorded as a diagnostic, the statement containing it is dropped and
+     * parsing goes on at the next synchronisation point, so that a single pass finds all syntax errors of a file and
+     * gives the program without the bad statements. Lexical errors are still thrown unless the lexer is
+     * recovering too.
+     * @param recovering true to record errors instead of throwing them
+     */
+    public void setRecovering(boolean recovering) {
+        this.recovering = recovering;
+    }
+
+    /**
+     * @return syntax errors recorded in recovery mode, in source order
+     */
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
     }
 
     /**
@@ -41,15 +177,26 @@ public class Parser {
         if (lookaheadUsed) {
             lookahead = lexer.getNextToken();
             lookaheadUsed = false;
+            tokensRead++;
         }
     }
 
+
     /**
      * Utility method to throw a parse exception
      * @param message message of the exception
      */
     private void throwException(String message) throws ParseException {
-        throw new ParseException(message + " at line " + lexer.lineNumber);
+        throw new ParseException(message + " at line " + lexer.getLineNumber());
+    }
+
+    /**
+     * Checks whether an identifier is the name of a struct declared before it
+     * @param identifier identifier token
+     * @return true if a struct with that name has been parsed
+     */
+    private boolean isDefinedStruct(Word identifier) {
+        return identifier.symbolId >= 0 && definedStructs.get(identifier.symbolId);
     }
 
     /**
@@ -89,24 +236,170 @@ public class Parser {
         List<ASTStatement> statementList = new ArrayList<>();
         ASTStatement statement;
 
-        while (true) {
-            statement = parseStatement();
+        while ((statement = parseNextStatement()) != null) {
+            statementList.add(statement);
+        }
 
-            if (statement == null) {
-                break;
+        return new ASTProgram(statementList);
+    }
+
+    /**
+     * Parses the program into an arena, storing each statement as soon as it is parsed so that only one
+     * statement is held as object nodes at a time
+     * @return program whose nodes are in an arena
+     */
+    public ASTProgram parseFlatProgram() throws Exception {
+        ASTArena arena = new ASTArena();
+        ASTStatement statement;
+
+        while ((statement = parseNextStatement()) != null) {
+            arena.addStatement(statement);
+        }
+
+        arena.trim();
+        return new ASTProgram(arena);
+    }
+
+    /**
+     * Parses the next top-level statement only, so that later phases can run on each statement as soon as it is
+     * parsed (in recovery mode, statements with syntax errors are skipped)
+     * @return statement node, null at the end of the file
+     */
+    public ASTStatement parseNextStatement() throws Exception {
+        ASTStatement statement;
+
+        while ((statement = parseRecoverableStatement()) == null && !endOfProgram());
+
+        return statement;
+    }
+
+    /**
+     * Checks whether all statements have been read, after a statement was dropped or there were none left
+     * @return true at the end of the file
+     */
+    private boolean endOfProgram() throws Exception {
+        updateLookahead();
+        return lookahead == null;
+    }
+
+    /**
+     * Parses statements, in recovery mode recording their syntax error and skipping to a synchronisation point
+     * @return statement node, null at the end of the file or when the statement was dropped
+     */
+    private ASTStatement parseRecoverableStatement() throws Exception {
+        if (!recovering) {
+            return parseStatement();
+        }
+
+        int start = consumedTokens();
+        boolean isInStruct = isStruct;
+
+        try {
+            return parseStatement();
+        } catch (ParseException e) {
+            isStruct = isInStruct;
+            recover(e, start);
+            return null;
+        }
+    }
+
+    /**
+     * Records a syntax error and skips tokens up to the next synchronisation point: after a semicolon, or before a
+     * closing curly bracket or a token which starts a statement. Blocks met on the way are skipped whole, so that
+     * their statements and closing curly bracket do not cause more errors.
+     * @param exception syntax error
+     * @param start number of tokens consumed before the statement with the error
+     */
+    private void recover(ParseException exception, int start) throws Exception {
+        if (!endOfFileReported) {
+            //The parser only knows the line of the error
+            diagnostics.add(new Diagnostic(lexer.getLineNumber(), 0, exception.getMessage()));
+        }
+
+        updateLookahead();
+        endOfFileReported = lookahead == null;
+
+        //At least one token is skipped, so that the same error is not found again
+        boolean mustSkip = consumedTokens() == start;
+        int depth = 0;
+
+        for (; lookahead != null; mustSkip = false, updateLookahead()) {
+            boolean stop = depth == 0 && !mustSkip;
+
+            switch (lookahead.tokenType) {
+                case SEMICOLON:
+                    lookaheadUsed = true;
+
+                    if (depth == 0) {
+                        return;
+                    }
+                    break;
+                case OPENCURLYBRACKET:
+                    depth++;
+                    lookaheadUsed = true;
+                    break;
+                case CLOSECURLYBRACKET:
+                    if (stop) {
+                        return;
+                    }
+
+                    depth = Math.max(depth - 1, 0);
+                    lookaheadUsed = true;
+                    break;
+                case LET:
+                case PRINT:
+                case IF:
+                case FOR:
+                case WHILE:
+                case RETURN:
+                case STRUCT:
+                case TYPE:
+                    if (stop) {
+                        return;
+                    }
+
+                    lookaheadUsed = true;
+                    break;
+                default:
+                    lookaheadUsed = true;
+                    break;
             }
+        }
+    }
 
-            statementList.add(statement);
+    /**
+     * Counts the tokens consumed so far (the lookahead only counts once it is consumed)
+     * @return number of tokens consumed
+     */
+    private int consumedTokens() {
+        return lookaheadUsed ? tokensRead : tokensRead - 1;
+    }
+
+    /**
+     * Parses statements, recording their token range if needed
+     * @return statement node
+     */
+    private ASTStatement parseStatement() throws Exception {
+        if (spans == null) {
+            return parseStatementNode();
         }
 
-        return new ASTProgram(statementList);
+        updateLookahead();
+        int start = tokenIndex();
+        ASTStatement statement = parseStatementNode();
+
+        if (statement != null) {
+            spans.put(statement, new int[] {start, tokenIndex()});
+        }
+
+        return statement;
     }
 
     /**
      * Parses statements
      * @return statement node
      */
-    private ASTStatement parseStatement() throws Exception {
+    private ASTStatement parseStatementNode() throws Exception {
         updateLookahead();
 
         if (lookahead == null) {
@@ -120,7 +413,7 @@ public class Parser {
                 return variableDeclaration;
             case IDENTIFIER:
                 //If the identifier resolves to a complex type, then parse as function declaration instead
-                if (definedStructs.contains(((Word) lookahead).lexeme)) {
+                if (isDefinedStruct((Word) lookahead)) {
                     return parseFunctionDeclaration();
                 }
 
@@ -164,14 +457,22 @@ public class Parser {
     }
 
     /**
-     * Parses expression (relational operators)
+     * Parses expression (all binary operators, see bindingPowers)
      * @return ASTExpression node
      */
     private ASTExpression parseExpression() throws Exception {
-        ASTExpression simpleExpression1 = parseSimpleExpression();
-        List list = new ArrayList();
-        TokenType relationalOperator;
-        ASTExpression simpleExpression2;
+        return iterativeExpressions ? parseExpressionIteratively() : parseExpression(LOWEST_BINDING_POWER);
+    }
+
+    /**
+     * Parses an expression by precedence climbing: operators are taken while they bind at least as tightly as
+     * minimumBindingPower, and the right operand of each only takes operators which bind more tightly, so operators
+     * with the same binding power are left associative
+     * @param minimumBindingPower binding power of the loosest operator which can be part of the expression
+     * @return ASTExpression node
+     */
+    private ASTExpression parseExpression(int minimumBindingPower) throws Exception {
+        ASTExpression expression = parseFactor();
 
         while (true) {
             updateLookahead();
@@ -180,138 +481,136 @@ public class Parser {
                 throwException("Unexpected end of file while parsing expression");
             }
 
-            if (isRelationalOperator(lookahead)) {
-                lookaheadUsed = true;
-                relationalOperator = lookahead.tokenType;
-                simpleExpression2 = parseSimpleExpression();
-                list.add(relationalOperator);
-                list.add(simpleExpression2);
-            } else {
+            TokenType operator = lookahead.tokenType;
+            int bindingPower = bindingPowers[operator.ordinal()];
+
+            if (bindingPower < minimumBindingPower) {
                 break;
             }
+
+            lookaheadUsed = true;
+            ASTExpression rightOperand = parseExpression(bindingPower + 1);
+            expression = binaryOperator(expression, rightOperand, operator);
         }
 
-        return resolveList(simpleExpression1, list);
+        return expression;
     }
 
     /**
-     * Creates binary operators from a list of expressions
-     * @param firstExpression first expression
-     * @param list list of expressions
+     * Parses an expression like parseExpression(LOWEST_BINDING_POWER), keeping a frame on an explicit stack instead
+     * of making a recursive call for every right operand, bracketed expression and unary operand
      * @return ASTExpression node
      */
-    private ASTExpression resolveList(ASTExpression firstExpression, List list) {
-        if (list.isEmpty()) {
-            return firstExpression;
-        } else {
-            ASTBinaryOperator operator = null;
-            ASTBinaryOperator previousOperator = null;
+    private ASTExpression parseExpressionIteratively() throws Exception {
+        //Frames below the base belong to the expression containing this one (if any)
+        int base = frameCount;
 
-            for (int i = 0; i < list.size(); i += 2) {
-                if (previousOperator == null) {
-                    operator = new ASTBinaryOperator(firstExpression, (ASTExpression) list.get(i + 1),
-                            new Token((TokenType) list.get(i)));
-                } else {
-                    operator = new ASTBinaryOperator(previousOperator, (ASTExpression) list.get(i + 1),
-                            new Token((TokenType) list.get(i)));
+        try {
+            pushFrame(LOWEST_BINDING_POWER, null);
+
+            while (true) {
+                updateLookahead();
+
+                if (lookahead == null) {
+                    throwException("Unexpected end of file, was expecting an expression");
                 }
 
-                previousOperator = operator;
-            }
+                //Brackets and unary operators open a frame for the expression they contain
+                TokenType prefix = lookahead.tokenType;
 
-            return operator;
-        }
-    }
+                if (prefix == TokenType.OPENROUNDBRACKET || prefix == TokenType.SUB || prefix == TokenType.NOT) {
+                    lookaheadUsed = true;
+                    pushFrame(LOWEST_BINDING_POWER, prefix);
+                    continue;
+                }
 
-    /**
-     * Utility method to checks if token is a relational operator (<, >, <=, >=, ==, !=)
-     * @param token token to check
-     * @return true if token is a relational operator, false otherwise
-     */
-    private boolean isRelationalOperator(Token token) {
-        return token.tokenType == TokenType.GTE || token.tokenType == TokenType.GT ||
-                token.tokenType == TokenType.LTE || token.tokenType == TokenType.LT ||
-                token.tokenType == TokenType.CMP || token.tokenType == TokenType.NE;
-    }
+                ASTExpression expression = parseFactor();
 
-    /**
-     * Parses simple expressions (additive operators)
-     * @return ASTExpression node
-     */
-    private ASTExpression parseSimpleExpression() throws Exception {
-        ASTExpression term1 = parseTerm();
-        List list = new ArrayList();
-        TokenType additiveOperator;
-        ASTExpression term2;
+                //Completes the frames which take no more operators, passing each expression to the frame below
+                while (true) {
+                    int frame = frameCount - 1;
 
-        while (true) {
-            updateLookahead();
+                    if (frameOperands[frame] == null) {
+                        frameOperands[frame] = expression;
+                    } else {
+                        frameOperands[frame] = binaryOperator(frameOperands[frame], expression, frameOperators[frame]);
+                    }
 
-            if (lookahead == null) {
-                throwException("Unexpected end of file while parsing expression");
-            }
+                    updateLookahead();
 
-            if (isAdditiveOperator(lookahead)) {
-                lookaheadUsed = true;
-                additiveOperator = lookahead.tokenType;
-                term2 = parseTerm();
-                list.add(additiveOperator);
-                list.add(term2);
-            } else {
-                break;
+                    if (lookahead == null) {
+                        throwException("Unexpected end of file while parsing expression");
+                    }
+
+                    TokenType operator = lookahead.tokenType;
+                    int bindingPower = bindingPowers[operator.ordinal()];
+
+                    if (bindingPower >= frameBindingPowers[frame]) {
+                        lookaheadUsed = true;
+                        frameOperators[frame] = operator;
+                        pushFrame(bindingPower + 1, null);
+                        break;
+                    }
+
+                    expression = frameOperands[frame];
+                    TokenType opener = frameOpeners[frame];
+                    popFrame();
+
+                    if (frame == base) {
+                        return expression;
+                    }
+
+                    if (opener == TokenType.OPENROUNDBRACKET) {
+                        assertToken(TokenType.CLOSEROUNDBRACKET);
+                    } else if (opener != null) {
+                        expression = unary(opener, expression);
+                    }
+                }
+            }
+        } finally {
+            while (frameCount > base) {
+                popFrame();
             }
         }
-
-        return resolveList(term1, list);
     }
 
     /**
-     * Utility method to check if a token is an additive operator (+, -, or)
-     * @param token token to check
-     * @return true if token is an additive operator, false otherwise
+     * Pushes a frame on the stack of the iterative expression parser
+     * @param minimumBindingPower binding power of the loosest operator which can be part of the expression
+     * @param opener '(', '-' or 'not' before the expression, null if it is a right operand or a whole expression
      */
-    private boolean isAdditiveOperator(Token token) {
-        return token.tokenType == TokenType.ADD || token.tokenType == TokenType.SUB || token.tokenType == TokenType.OR;
+    private void pushFrame(int minimumBindingPower, TokenType opener) {
+        if (frameCount == frameBindingPowers.length) {
+            frameBindingPowers = Arrays.copyOf(frameBindingPowers, frameCount * 2);
+            frameOpeners = Arrays.copyOf(frameOpeners, frameCount * 2);
+            frameOperands = Arrays.copyOf(frameOperands, frameCount * 2);
+            frameOperators = Arrays.copyOf(frameOperators, frameCount * 2);
+        }
+
+        frameBindingPowers[frameCount] = minimumBindingPower;
+        frameOpeners[frameCount] = opener;
+        frameOperands[frameCount] = null;
+        frameOperators[frameCount] = null;
+        frameCount++;
     }
 
     /**
-     * Parses terms (multiplicative operators)
-     * @return ASTExpression node
+     * Pops the top frame of the stack of the iterative expression parser, dropping its nodes
      */
-    private ASTExpression parseTerm() throws Exception {
-        ASTExpression factor1 = parseFactor();
-        List list = new ArrayList();
-        TokenType multiplicativeOperator;
-        ASTExpression factor2;
-
-        while (true) {
-            updateLookahead();
-
-            if (lookahead == null) {
-                throwException("Unexpected end of file while parsing expression");
-            }
-
-            if (isMultiplicativeOperator(lookahead)) {
-                lookaheadUsed = true;
-                multiplicativeOperator = lookahead.tokenType;
-                factor2 = parseFactor();
-                list.add(multiplicativeOperator);
-                list.add(factor2);
-            } else {
-                break;
-            }
-        }
-
-        return resolveList(factor1, list);
+    private void popFrame() {
+        frameCount--;
+        frameOperands[frameCount] = null;
     }
 
     /**
-     * Utility method to check if token is a multiplicative operator (*, /, and)
-     * @param token token to check
-     * @return true if token is a multiplicative operator, false otherwise
+     * Utility method to give the same binding power to binary operators
+     * @param bindingPower binding power (higher binds more tightly)
+     * @param operators operator token types
      */
-    private boolean isMultiplicativeOperator(Token token) {
-        return token.tokenType == TokenType.MUL || token.tokenType == TokenType.DIV || token.tokenType == TokenType.AND;
+    private static void setBindingPower(int bindingPower, TokenType... operators) {
+        for (TokenType operator : operators) {
+            bindingPowers[operator.ordinal()] = bindingPower;
+        }
     }
 
     /**
@@ -327,7 +626,8 @@ public class Parser {
 
         ASTIdentifier structName = new ASTIdentifier((Word) lookahead);
 
-        definedStructs.add(structName.identifier);
+        definedStructs.set(structName.symbolId);
+        definedStructsCopy = null;
 
         assertToken(TokenType.OPENCURLYBRACKET);
 
@@ -342,21 +642,17 @@ public class Parser {
                 break;
             }
 
-            //Structs can only have variable declarations or function declarations
-            if (isLookahead(TokenType.LET)) {
-                statementsList.add(parseVariableDeclaration());
-                assertToken(TokenType.SEMICOLON);
-            } else if (isLookahead(TokenType.TYPE)) {
-                statementsList.add(parseFunctionDeclaration());
-            } else if (isLookahead(TokenType.IDENTIFIER)) {
-                //Return type of struct function can be another struct, but not the current one
-                if (definedStructs.contains(((Word) lookahead).lexeme)) {
-                    statementsList.add(parseFunctionDeclaration());
-                } else {
-                    throwException("Could not resolve identifier " + ((Word) lookahead).lexeme + " as a struct type");
+            int start = consumedTokens();
+
+            try {
+                statementsList.add(parseStructMember());
+            } catch (ParseException e) {
+                if (!recovering) {
+                    throw e;
                 }
-            } else {
-                throwException("Got " + lookahead.tokenType + ", expecting " + TokenType.LET + " or type");
+
+                isStruct = true;
+                recover(e, start);
             }
         }
 
@@ -365,6 +661,33 @@ public class Parser {
         return new ASTStruct(structName, statementsList);
     }
 
+    /**
+     * Parses a statement in a struct
+     * @return ASTVariableDeclaration or ASTFunctionDeclaration node
+     */
+    private ASTStatement parseStructMember() throws Exception {
+        ASTStatement member = null;
+
+        //Structs can only have variable declarations or function declarations
+        if (isLookahead(TokenType.LET)) {
+            member = parseVariableDeclaration();
+            assertToken(TokenType.SEMICOLON);
+        } else if (isLookahead(TokenType.TYPE)) {
+            member = parseFunctionDeclaration();
+        } else if (isLookahead(TokenType.IDENTIFIER)) {
+            //Return type of struct function can be another struct, but not the current one
+            if (isDefinedStruct((Word) lookahead)) {
+                member = parseFunctionDeclaration();
+            } else {
+                throwException("Could not resolve identifier " + ((Word) lookahead).lexeme + " as a struct type");
+            }
+        } else {
+            throwException("Got " + lookahead.tokenType + ", expecting " + TokenType.LET + " or type");
+        }
+
+        return member;
+    }
+
     /**
      * Parses factors
      * @return ASTExpression node
@@ -384,7 +707,7 @@ public class Parser {
             case FALSE:
             case CHAR:
                 lookaheadUsed = true;
-                return new ASTLiteral(lookahead);
+                return expressionTable == null ? new ASTLiteral(lookahead) : expressionTable.literal(lookahead);
             case OPENCURLYBRACKET:
                 return parseArrayLiteral();
             case OPENROUNDBRACKET:
@@ -599,7 +922,32 @@ public class Parser {
     private ASTUnary parseUnary() throws Exception {
         TokenType unaryType = lookahead.tokenType;
         ASTExpression expression = parseExpression();
-        return new ASTUnary(unaryType, expression);
+        return unary(unaryType, expression);
+    }
+
+    /**
+     * Creates a binary operator node, or gets the shared one when hash-consing
+     * @param expression1 first operand
+     * @param expression2 second operand
+     * @param operator token type of the operator
+     * @return ASTBinaryOperator node
+     */
+    private ASTBinaryOperator binaryOperator(ASTExpression expression1, ASTExpression expression2, TokenType operator) {
+        if (expressionTable == null) {
+            return new ASTBinaryOperator(expression1, expression2, Token.of(operator));
+        }
+
+        return expressionTable.binaryOperator(expression1, expression2, operator);
+    }
+
+    /**
+     * Creates a unary node, or gets the shared one when hash-consing
+     * @param unaryType unary operator
+     * @param expression operand
+     * @return ASTUnary node
+     */
+    private ASTUnary unary(TokenType unaryType, ASTExpression expression) {
+        return expressionTable == null ? new ASTUnary(unaryType, expression) : expressionTable.unary(unaryType, expression);
     }
 
     /**
@@ -684,6 +1032,8 @@ public class Parser {
      * @return ASTBlock node
      */
     private ASTBlock parseBlock() throws Exception {
+        int start = spans == null ? -1 : tokenIndex();
+
         assertToken(TokenType.OPENCURLYBRACKET);
 
         List<ASTStatement> statementList = new ArrayList<>();
@@ -700,12 +1050,21 @@ public class Parser {
                 lookaheadUsed = true;
                 break;
             } else {
-                statement = parseStatement();
-                statementList.add(statement);
+                statement = parseRecoverableStatement();
+
+                if (statement != null) {
+                    statementList.add(statement);
+                }
             }
         }
 
-        return new ASTBlock(statementList);
+        ASTBlock block = new ASTBlock(statementList);
+
+        if (spans != null) {
+            spans.put(block, new int[] {start, tokenIndex()});
+        }
+
+        return block;
     }
 
     /**
@@ -747,11 +1106,120 @@ public class Parser {
 
         assertToken(TokenType.CLOSEROUNDBRACKET);
 
-        ASTBlock functionBlock = parseBlock();
+        ASTFunctionDeclaration functionDeclaration;
+        int bodyEnd = lazyFunctionBodies ? findLazyBodyEnd() : -1;
+
+        if (bodyEnd == -1) {
+            functionDeclaration = new ASTFunctionDeclaration(returnType, functionName, parameterList, parseBlock());
+        } else {
+            TokenStreamReader reader = (TokenStreamReader) lexer;
+
+            if (definedStructsCopy == null) {
+                definedStructsCopy = (BitSet) definedStructs.clone();
+            }
+
+            LazyFunctionBody body = new LazyFunctionBody(tokens, reader.position(), bodyEnd, definedStructsCopy,
+                    iterativeExpressions);
+            functionDeclaration = new ASTFunctionDeclaration(returnType, functionName, parameterList, body);
+            reader.seek(bodyEnd);
+        }
 
         isStruct = isInStruct;
 
-        return new ASTFunctionDeclaration(returnType, functionName, parameterList, functionBlock);
+        return functionDeclaration;
+    }
+
+    /**
+     * Records the token range of every statement and block parsed from now on
+     * @param spans map from nodes to their first token index and the index after their last token
+     */
+    void setSpans(IdentityHashMap<ASTNode, int[]> spans) {
+        if (tokens == null) {
+            throw new IllegalStateException("Token ranges can only be recorded from a packed token stream");
+        }
+
+        this.spans = spans;
+    }
+
+    /**
+     * Gets the position in the packed token stream (only when reading one)
+     * @return index of the first token which has not been consumed
+     */
+    private int tokenIndex() {
+        TokenStreamReader reader = (TokenStreamReader) lexer;
+
+        if (lookaheadUsed) {
+            return reader.position();
+        }
+
+        //The lookahead was read but not consumed (the reader moved past the end if there were no tokens left)
+        return lookahead == null ? reader.end() : reader.position() - 1;
+    }
+
+    /**
+     * Finds the end of the function body starting at the next token, using brace matching
+     * @return index after the closing curly bracket, -1 if the body has to be parsed now (when it does not start
+     * with a curly bracket, is not closed, or declares a struct, which changes how the rest of the program is parsed)
+     */
+    private int findLazyBodyEnd() {
+        TokenStreamReader reader = (TokenStreamReader) lexer;
+        int depth = 0;
+
+        for (int i = reader.position(); i < reader.end(); i++) {
+            switch (tokens.tokenType(i)) {
+                case OPENCURLYBRACKET:
+                    depth++;
+                    break;
+                case CLOSECURLYBRACKET:
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                    break;
+                case STRUCT:
+                    return -1;
+                default:
+                    if (depth == 0) {
+                        return -1;
+                    }
+                    break;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses the statements in a range of a packed token stream, used by IncrementalParser
+     * @param tokens packed token stream of the program
+     * @param from index of the first token of the statements
+     * @param to index after the last token of the statements
+     * @param definedStructs structs declared before the first token (changed by the structs declared in the range)
+     * @param spans map receiving the token ranges of the statements and blocks
+     * @return statement nodes
+     */
+    static List<ASTStatement> parseStatements(TokenStream tokens, int from, int to, BitSet definedStructs,
+                                              IdentityHashMap<ASTNode, int[]> spans) throws Exception {
+        Parser parser = new Parser(new TokenStreamReader(tokens, from, to), tokens, definedStructs);
+        parser.spans = spans;
+        return parser.parseProgram().statements;
+    }
+
+    /**
+     * Parses the body of a lazily parsed function
+     * @param tokens packed token stream of the program
+     * @param from index of the opening curly bracket of the body
+     * @param to index after the closing curly bracket of the body
+     * @param definedStructs structs declared before the function (not changed, since the body declares none)
+     * @param iterativeExpressions whether expressions are parsed with an explicit stack
+     * @return ASTBlock node of the body
+     */
+    static ASTBlock parseFunctionBody(TokenStream tokens, int from, int to, BitSet definedStructs,
+                                      boolean iterativeExpressions) throws Exception {
+        Parser parser = new Parser(new TokenStreamReader(tokens, from, to), tokens, definedStructs);
+        parser.lazyFunctionBodies = true;
+        parser.iterativeExpressions = iterativeExpressions;
+        parser.definedStructsCopy = definedStructs;
+        return parser.parseBlock();
     }
 
     /**
@@ -844,7 +1312,7 @@ public class Parser {
                 throwException("Can not have complex type");
             }
 
-            if (definedStructs.contains(((Word) lookahead).lexeme)) {
+            if (isDefinedStruct((Word) lookahead)) {
                 type = new Type(((Word) lookahead).lexeme, TokenType.COMPLEXTYPE);
                 lookaheadUsed = true;
             } else {
@@ -8,8 +8,35 @@ public class FunctionSymbolTable {
     //Stack of scopes
     private final LinkedList<Map<String, ASTFunctionDeclaration>> table;
 
+    //Order in which the functions were registered, shared with the snapshots of this table
+    private final Map<ASTFunctionDeclaration, Integer> registrations;
+
+    //Number of scopes at the bottom of the stack which were shared by snapshot(), and the number of functions which
+    //had been registered when they were shared (functions registered in them since then are hidden)
+    private int sharedScopes = 0;
+    private int sharedRegistrations = 0;
+
     public FunctionSymbolTable() {
         table = new LinkedList<>();
+        registrations = new IdentityHashMap<>();
+    }
+
+    //Used by snapshot()
+    private FunctionSymbolTable(FunctionSymbolTable functionSymbolTable) {
+        table = new LinkedList<>(functionSymbolTable.table);
+        registrations = functionSymbolTable.registrations;
+        sharedScopes = table.size();
+        sharedRegistrations = registrations.size();
+    }
+
+    /**
+     * Creates a table which shares the current scopes, but only sees the functions which have been registered so far
+     * (used to check the body of a function later, in the scopes it was declared in)
+     * Scopes pushed on the snapshot are its own, and the shared scopes must not be changed through it.
+     * @return snapshot of the symbol table
+     */
+    public FunctionSymbolTable snapshot() {
+        return new FunctionSymbolTable(this);
     }
 
     /**
@@ -41,6 +68,7 @@ public class FunctionSymbolTable {
     public void registerFunction(ASTFunctionDeclaration function) {
         if (!table.isEmpty()) {
             table.peek().put(generateIdentifier(function), function);
+            registrations.put(function, registrations.size());
         }
     }
 
@@ -52,13 +80,20 @@ public class FunctionSymbolTable {
     public ASTFunctionDeclaration lookup(String identifier) {
         Iterator<Map<String, ASTFunctionDeclaration>> iterator = table.iterator();
 
+        //Scopes from this index onwards are shared with the table this one is a snapshot of
+        int firstSharedScope = table.size() - sharedScopes;
+        int i = 0;
+
         if (!table.isEmpty()) {
             do {
                 Map<String, ASTFunctionDeclaration> map = iterator.next();
+                ASTFunctionDeclaration function = map.get(identifier);
 
-                if (map.containsKey(identifier)) {
-                    return map.get(identifier);
+                if (function != null && (i < firstSharedScope || registrations.get(function) < sharedRegistrations)) {
+                    return function;
                 }
+
+                i++;
             } while (iterator.hasNext());
         }
 
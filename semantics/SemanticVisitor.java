@@ -6,8 +6,11 @@ import lexer.Type;
 import parser.*;
 import visitors.ASTVisitor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +29,17 @@ public class SemanticVisitor implements ASTVisitor {
     //Flag which is true if currently visiting nodes inside a struct node
     private boolean isStruct = false;
 
+    //Lazily parsed functions whose body has not been checked yet, with the scopes they were declared in
+    private final Map<ASTFunctionDeclaration, DeferredBody> deferredBodies = new IdentityHashMap<>();
+
+    //Whether operator expressions are checked with an explicit stack instead of recursive calls
+    private boolean iterativeExpressions = false;
+
+    //Explicit stacks of the iterative check, shared with the expressions checked inside it (e.g. function calls)
+    private final List<ASTExpression> pendingNodes = new ArrayList<>();
+    private final BitSet operandsEvaluated = new BitSet();
+    private final List<Type> operandTypes = new ArrayList<>();
+
     /**
      * Constructs the semantic visitor
      * @param program the abstract syntax tree
@@ -38,10 +52,31 @@ public class SemanticVisitor implements ASTVisitor {
         this.program = program;
     }
 
+    /**
+     * Constructs the semantic visitor for a program which is checked one top-level statement at a time, in source
+     * order, through visit(ASTStatement) (the global scopes are created here)
+     */
+    public SemanticVisitor() {
+        this(null);
+
+        variableSymbolTable.push();
+        functionSymbolTable.push();
+    }
+
+    /**
+     * Enables or disables checking operator expressions with an explicit stack
+     * In this mode nested binary and unary operators are checked without recursive calls, so their nesting depth
+     * is only limited by the heap and not by the size of the thread stack. The errors are the same.
+     * @param iterativeExpressions true to check operator expressions with an explicit stack
+     */
+    public void setIterativeExpressions(boolean iterativeExpressions) {
+        this.iterativeExpressions = iterativeExpressions;
+    }
+
     /**
      * Starts semantic analysis
      */
-    public void doSemanticAnalysis() throws SemanticException {
+    public void doSemanticAnalysis() throws Exception {
         visit(program);
     }
 
@@ -58,7 +93,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astProgram node to visit
      */
     @Override
-    public void visit(ASTProgram astProgram) throws SemanticException {
+    public void visit(ASTProgram astProgram) throws Exception {
         //Global scopes
         variableSymbolTable.push();
         functionSymbolTable.push();
@@ -76,7 +111,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param statement node to visit
      */
     @Override
-    public void visit(ASTStatement statement) throws SemanticException {
+    public void visit(ASTStatement statement) throws Exception {
         if (statement instanceof ASTAssignment) {
             visit((ASTAssignment) statement);
         } else if (statement instanceof ASTBlock) {
@@ -107,7 +142,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astAssignment node to visit
      */
     @Override
-    public void visit(ASTAssignment astAssignment) throws SemanticException {
+    public void visit(ASTAssignment astAssignment) throws Exception {
         Type type;
 
         //Visits the different identifier possibilities
@@ -205,7 +240,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astBlock node to visit
      */
     @Override
-    public void visit(ASTBlock astBlock) throws SemanticException {
+    public void visit(ASTBlock astBlock) throws Exception {
         variableSymbolTable.push();
         functionSymbolTable.push();
 
@@ -237,7 +272,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astFor node to visit
      */
     @Override
-    public void visit(ASTFor astFor) throws SemanticException {
+    public void visit(ASTFor astFor) throws Exception {
         variableSymbolTable.push();
         //No need to do functionSymbolTable.push() since you can't declare a function in for
 
@@ -266,7 +301,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astFunctionDeclaration node to visit
      */
     @Override
-    public void visit(ASTFunctionDeclaration astFunctionDeclaration) throws SemanticException {
+    public void visit(ASTFunctionDeclaration astFunctionDeclaration) throws Exception {
         //Disallows nesting of functions
         if (returnTypeOfCurrentFunction != null) {
             throwException("Cannot nest functions");
@@ -277,7 +312,6 @@ public class SemanticVisitor implements ASTVisitor {
             throwException("Function " + astFunctionDeclaration.functionName.identifier + " has already been defined");
         }
 
-        hasReturn = false;
         variableSymbolTable.push();
 
         for (ASTParameter parameter : astFunctionDeclaration.parameterList) {
@@ -299,8 +333,37 @@ public class SemanticVisitor implements ASTVisitor {
         returnTypeOfCurrentFunction = astFunctionDeclaration.returnType;
         functionSymbolTable.registerFunction(astFunctionDeclaration);
 
+        /*
+            The body of a lazily parsed function is only parsed and checked when the function is first called
+            (so the bodies of functions which are never called are not checked), in the scopes it was declared in
+            Functions of structs are checked straight away, since their bodies are checked with the struct.
+         */
+        if (!isStruct && !astFunctionDeclaration.isFunctionBlockParsed()) {
+            variableSymbolTable.pop();
+            deferredBodies.put(astFunctionDeclaration,
+                    new DeferredBody(variableSymbolTable.snapshot(), functionSymbolTable.snapshot()));
+
+            identifierOfCurrentFunction = "";
+            returnTypeOfCurrentFunction = null;
+            return;
+        }
+
+        visitFunctionBlock(astFunctionDeclaration);
+
+        identifierOfCurrentFunction = "";
+        returnTypeOfCurrentFunction = null;
+        variableSymbolTable.pop();
+    }
+
+    /**
+     * Checks the body of the function which is currently being visited (its parameters are in the current scope)
+     * @param astFunctionDeclaration function to check
+     */
+    private void visitFunctionBlock(ASTFunctionDeclaration astFunctionDeclaration) throws Exception {
+        hasReturn = false;
+
         //Parses function statements
-        for (ASTStatement statement : astFunctionDeclaration.functionBlock.statements) {
+        for (ASTStatement statement : astFunctionDeclaration.getFunctionBlock().statements) {
             //If function has a return and more statements are left,
             if (hasReturn) {
                 throwException("Unreachable statement(s)");
@@ -317,10 +380,50 @@ public class SemanticVisitor implements ASTVisitor {
         if (!hasReturn) {
             throwException("Function must return a value");
         }
+    }
+
+    /**
+     * Checks the body of a lazily parsed function the first time it is called (in the scopes it was declared in)
+     * @param astFunctionDeclaration called function
+     */
+    private void visitDeferredBody(ASTFunctionDeclaration astFunctionDeclaration) throws Exception {
+        DeferredBody deferredBody = deferredBodies.remove(astFunctionDeclaration);
+
+        if (deferredBody == null) {
+            return;
+        }
+
+        //The call being checked is resumed afterwards
+        VariableSymbolTable oldVariableSymbolTable = variableSymbolTable;
+        FunctionSymbolTable oldFunctionSymbolTable = functionSymbolTable;
+        Type oldReturnType = returnTypeOfCurrentFunction;
+        String oldIdentifier = identifierOfCurrentFunction;
+        boolean oldHasReturn = hasReturn;
+        boolean oldIsStruct = isStruct;
+
+        variableSymbolTable = deferredBody.variableSymbolTable;
+        functionSymbolTable = deferredBody.functionSymbolTable;
+        isStruct = false;
+
+        variableSymbolTable.push();
+
+        for (ASTParameter parameter : astFunctionDeclaration.parameterList) {
+            variableSymbolTable.insert(parameter.identifier.identifier, parameter.type);
+        }
+
+        identifierOfCurrentFunction = functionSymbolTable.generateIdentifier(astFunctionDeclaration);
+        returnTypeOfCurrentFunction = astFunctionDeclaration.returnType;
+
+        visitFunctionBlock(astFunctionDeclaration);
 
-        identifierOfCurrentFunction = "";
-        returnTypeOfCurrentFunction = null;
         variableSymbolTable.pop();
+
+        variableSymbolTable = oldVariableSymbolTable;
+        functionSymbolTable = oldFunctionSymbolTable;
+        returnTypeOfCurrentFunction = oldReturnType;
+        identifierOfCurrentFunction = oldIdentifier;
+        hasReturn = oldHasReturn;
+        isStruct = oldIsStruct;
     }
 
     /**
@@ -328,7 +431,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astIf node to visit
      */
     @Override
-    public void visit(ASTIf astIf) throws SemanticException {
+    public void visit(ASTIf astIf) throws Exception {
         visit(astIf.conditionExpression);
 
         if (!"bool".equals(expressionType.lexeme)) {
@@ -353,7 +456,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astPrint node to visit
      */
     @Override
-    public void visit(ASTPrint astPrint) throws SemanticException {
+    public void visit(ASTPrint astPrint) throws Exception {
         visit(astPrint.expression);
     }
 
@@ -362,7 +465,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astReturn node to visit
      */
     @Override
-    public void visit(ASTReturn astReturn) throws SemanticException {
+    public void visit(ASTReturn astReturn) throws Exception {
         if (returnTypeOfCurrentFunction == null) {
             //Prevents return statements from being declared outside a function
             throwException("You cannot return a value outside function scope");
@@ -392,7 +495,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astVariableDeclaration node to visit
      */
     @Override
-    public void visit(ASTVariableDeclaration astVariableDeclaration) throws SemanticException {
+    public void visit(ASTVariableDeclaration astVariableDeclaration) throws Exception {
         //Prevents structs declaring auto type
         if (isStruct && astVariableDeclaration.type.lexeme.contains("auto")){
             throwException("Can not use auto type for variable declarations in structs");
@@ -470,7 +573,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astWhile node to visit
      */
     @Override
-    public void visit(ASTWhile astWhile) throws SemanticException {
+    public void visit(ASTWhile astWhile) throws Exception {
         visit(astWhile.conditionExpression);
 
         //Verifies that the while condition is boolean
@@ -486,7 +589,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astExpression node to visit
      */
     @Override
-    public void visit(ASTExpression astExpression) throws SemanticException {
+    public void visit(ASTExpression astExpression) throws Exception {
         /*
             Note that children of the ASTIdentifier node
             ASTStruct... and ASTArrayIndexIdentifier) MUST be placed above ASTIdentifier
@@ -520,7 +623,12 @@ public class SemanticVisitor implements ASTVisitor {
      * @param operator node to visit
      */
     @Override
-    public void visit(ASTBinaryOperator operator) throws SemanticException {
+    public void visit(ASTBinaryOperator operator) throws Exception {
+        if (iterativeExpressions) {
+            checkIteratively(operator);
+            return;
+        }
+
         String type1;
         String type2;
 
@@ -530,14 +638,103 @@ public class SemanticVisitor implements ASTVisitor {
         visit(operator.expression2);
         type2 = expressionType.lexeme;
 
-        switch (operator.operator.tokenType) {
+        checkBinaryOperator(operator.operator.tokenType, type1, type2);
+    }
+
+    /**
+     * Checks an operator expression in the same order as the recursive visitors, keeping the operators whose
+     * operands are being checked and the operand types on explicit stacks
+     * @param root binary operator or unary node to check
+     */
+    private void checkIteratively(ASTExpression root) throws Exception {
+        //Entries below the bases belong to the expression containing this one (if any)
+        int nodeBase = pendingNodes.size();
+        int operandBase = operandTypes.size();
+
+        try {
+            pendingNodes.add(root);
+
+            while (pendingNodes.size() > nodeBase) {
+                int top = pendingNodes.size() - 1;
+                ASTExpression node = pendingNodes.get(top);
+
+                if (!(node instanceof ASTBinaryOperator || node instanceof ASTUnary)) {
+                    //Other expressions do not nest operators directly
+                    pendingNodes.remove(top);
+                    visit(node);
+                } else if (!operandsEvaluated.get(top)) {
+                    //The operator stays on the stack until its operands are checked (the first operand on top)
+                    operandsEvaluated.set(top);
+
+                    if (node instanceof ASTBinaryOperator) {
+                        pendingNodes.add(((ASTBinaryOperator) node).expression2);
+                        pendingNodes.add(((ASTBinaryOperator) node).expression1);
+                    } else {
+                        pendingNodes.add(((ASTUnary) node).expression);
+                    }
+
+                    continue;
+                } else {
+                    pendingNodes.remove(top);
+                    operandsEvaluated.clear(top);
+
+                    if (node instanceof ASTBinaryOperator) {
+                        int operand = operandTypes.size() - 2;
+                        String type1 = operandTypes.get(operand).lexeme;
+                        String type2 = operandTypes.get(operand + 1).lexeme;
+                        popOperands(operand);
+
+                        checkBinaryOperator(((ASTBinaryOperator) node).operator.tokenType, type1, type2);
+                    } else {
+                        int operand = operandTypes.size() - 1;
+                        expressionType = operandTypes.get(operand);
+                        popOperands(operand);
+
+                        checkUnary(((ASTUnary) node).unaryType);
+                    }
+                }
+
+                operandTypes.add(expressionType);
+            }
+
+            //The type of the root is left in expressionType
+            popOperands(operandBase);
+        } finally {
+            operandsEvaluated.clear(nodeBase, Math.max(pendingNodes.size(), nodeBase));
+
+            while (pendingNodes.size() > nodeBase) {
+                pendingNodes.remove(pendingNodes.size() - 1);
+            }
+
+            popOperands(operandBase);
+        }
+    }
+
+    /**
+     * Removes operand types from the top of the operand stack of the iterative check
+     * @param size number of operand types which are kept
+     */
+    private void popOperands(int size) {
+        while (operandTypes.size() > size) {
+            operandTypes.remove(operandTypes.size() - 1);
+        }
+    }
+
+    /**
+     * Checks the operand types of a binary operator, leaving the type of the result in expressionType
+     * @param operator token type of the operator
+     * @param type1 type of first operand
+     * @param type2 type of second operand
+     */
+    private void checkBinaryOperator(TokenType operator, String type1, String type2) throws SemanticException {
+        switch (operator) {
             case ADD:
                 expressionType = checkTypesAdd(type1, type2);
                 break;
             case SUB:
             case MUL:
             case DIV:
-                expressionType = checkTypesMath(operator.operator.tokenType, type1, type2);
+                expressionType = checkTypesMath(operator, type1, type2);
                 break;
             case CMP:
             case NE:
@@ -729,7 +926,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astFunctionCall node to visit
      */
     @Override
-    public void visit(ASTFunctionCall astFunctionCall) throws SemanticException {
+    public void visit(ASTFunctionCall astFunctionCall) throws Exception {
         StringBuilder stringBuilder = new StringBuilder(astFunctionCall.identifier.identifier);
 
         /*
@@ -760,6 +957,8 @@ public class SemanticVisitor implements ASTVisitor {
                 }
             }
 
+            visitDeferredBody(declaredFunction);
+
             expressionType = declaredFunction.returnType;
         } else {
             //If declaredFunction is null, then the function has not been declared
@@ -772,7 +971,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astIdentifier node to visit
      */
     @Override
-    public void visit(ASTIdentifier astIdentifier) throws SemanticException {
+    public void visit(ASTIdentifier astIdentifier) throws Exception {
         Type identifierType = variableSymbolTable.lookupType(astIdentifier.identifier);
 
         if (identifierType == null) {
@@ -787,7 +986,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astArrayIndexIdentifier node to visit
      */
     @Override
-    public void visit(ASTArrayIndexIdentifier astArrayIndexIdentifier) throws SemanticException {
+    public void visit(ASTArrayIndexIdentifier astArrayIndexIdentifier) throws Exception {
         visit(astArrayIndexIdentifier.index);
 
         if (!"int".equals(expressionType.lexeme)) {
@@ -833,7 +1032,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astArrayLiteral node to visit
      */
     @Override
-    public void visit(ASTArrayLiteral astArrayLiteral) throws SemanticException {
+    public void visit(ASTArrayLiteral astArrayLiteral) throws Exception {
         Array arrayType = null;
         int size = astArrayLiteral.arrayMembers.size();
 
@@ -861,10 +1060,22 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astUnary node to visit
      */
     @Override
-    public void visit(ASTUnary astUnary) throws SemanticException {
+    public void visit(ASTUnary astUnary) throws Exception {
+        if (iterativeExpressions) {
+            checkIteratively(astUnary);
+            return;
+        }
+
         visit(astUnary.expression);
+        checkUnary(astUnary.unaryType);
+    }
 
-        if (astUnary.unaryType == TokenType.SUB) {
+    /**
+     * Checks the operand type of a unary operator, which is left in expressionType
+     * @param unaryType unary operator
+     */
+    private void checkUnary(TokenType unaryType) throws SemanticException {
+        if (unaryType == TokenType.SUB) {
             //Unary minus can only be used with float and int types
             if (!("float".equals(expressionType.lexeme) || "int".equals(expressionType.lexeme))) {
                 throwException("Unary '-' can only be used with float and integer types");
@@ -882,7 +1093,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astStruct node to visit
      */
     @Override
-    public void visit(ASTStruct astStruct) throws SemanticException {
+    public void visit(ASTStruct astStruct) throws Exception {
         isStruct = true;
 
         //Prevents two struct with the same name
@@ -916,7 +1127,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astStructVariableSelector node to visit
      */
     @Override
-    public void visit(ASTStructVariableSelector astStructVariableSelector) throws SemanticException {
+    public void visit(ASTStructVariableSelector astStructVariableSelector) throws Exception {
         //Get struct type
         Type type = variableSymbolTable.lookupType(astStructVariableSelector.identifier);
 
@@ -952,7 +1163,7 @@ public class SemanticVisitor implements ASTVisitor {
      * @param astStructFunctionSelector node to visit
      */
     @Override
-    public void visit(ASTStructFunctionSelector astStructFunctionSelector) throws SemanticException {
+    public void visit(ASTStructFunctionSelector astStructFunctionSelector) throws Exception {
         //Get struct type
         Type type = variableSymbolTable.lookupType(astStructFunctionSelector.identifier);
 
@@ -1003,4 +1214,15 @@ public class SemanticVisitor implements ASTVisitor {
             throwException("Cannot resolve function " + stringBuilder.toString());
         }
     }
-}
\ No newline at end of file
+
+    //Scopes a lazily parsed function was declared in, to check its body when it is first called
+    private static class DeferredBody {
+        private final VariableSymbolTable variableSymbolTable;
+        private final FunctionSymbolTable functionSymbolTable;
+
+        private DeferredBody(VariableSymbolTable variableSymbolTable, FunctionSymbolTable functionSymbolTable) {
+            this.variableSymbolTable = variableSymbolTable;
+            this.functionSymbolTable = functionSymbolTable;
+        }
+    }
+}
@@ -7,6 +7,9 @@ public class TypeValuePair {
     public Type type;
     public Object value;
 
+    //Order in which the variable was inserted in its symbol table (see VariableSymbolTable.snapshot())
+    int insertion;
+
     /**
      * Constructs a type value pair with the type and null value
      * @param type type of TypeValuePair
@@ -10,6 +10,14 @@ public class VariableSymbolTable {
     //Stack of scopes
     private LinkedList<Map<String, TypeValuePair>> table;
 
+    //Number of variables inserted so far, which orders the variables of all the scopes
+    private int insertions = 0;
+
+    //Number of scopes at the bottom of the stack which were shared by snapshot(), and the number of variables which
+    //had been inserted when they were shared (variables inserted in them since then are hidden)
+    private int sharedScopes = 0;
+    private int sharedInsertions = 0;
+
     /**
      * Creates a copy of another variable symbol table (needed for structs,
      * since otherwise, changing the value of one "instance" changes the
@@ -26,11 +34,17 @@ public class VariableSymbolTable {
             Set<Map.Entry<String, TypeValuePair>> entries = map.entrySet();
 
             for (Map.Entry<String, TypeValuePair> entry : entries) {
-                mapToCopy.put(entry.getKey(), new TypeValuePair(entry.getValue().type, entry.getValue().value));
+                TypeValuePair pair = new TypeValuePair(entry.getValue().type, entry.getValue().value);
+                pair.insertion = entry.getValue().insertion;
+                mapToCopy.put(entry.getKey(), pair);
             }
 
             table.add(mapToCopy);
         }
+
+        insertions = variableSymbolTable.insertions;
+        sharedScopes = variableSymbolTable.sharedScopes;
+        sharedInsertions = variableSymbolTable.sharedInsertions;
     }
 
     /**
@@ -40,6 +54,22 @@ public class VariableSymbolTable {
         table = new LinkedList<>();
     }
 
+    /**
+     * Creates a table which shares the current scopes, but only sees the variables which have been inserted so far
+     * (used to check the body of a function later, in the scopes it was declared in)
+     * Scopes pushed on the snapshot are its own, and the shared scopes must not be changed through it.
+     * @return snapshot of the symbol table
+     */
+    public VariableSymbolTable snapshot() {
+        VariableSymbolTable snapshot = new VariableSymbolTable();
+        snapshot.table.addAll(table);
+        snapshot.insertions = insertions;
+        snapshot.sharedScopes = table.size();
+        snapshot.sharedInsertions = insertions;
+
+        return snapshot;
+    }
+
     /**
      * Adds a new scope
      */
@@ -53,9 +83,7 @@ public class VariableSymbolTable {
      * @param type type of variable to add
      */
     public void insert(String identifier, Type type) {
-        if (!table.isEmpty()) {
-            table.peek().put(identifier, new TypeValuePair(type));
-        }
+        insert(identifier, type, null);
     }
 
     /**
@@ -66,7 +94,9 @@ public class VariableSymbolTable {
      */
     public void insert(String identifier, Type type, Object value) {
         if (!table.isEmpty()) {
-            table.peek().put(identifier, new TypeValuePair(type, value));
+            TypeValuePair pair = new TypeValuePair(type, value);
+            pair.insertion = insertions++;
+            table.peek().put(identifier, pair);
         }
     }
 
@@ -114,13 +144,20 @@ public class VariableSymbolTable {
     public TypeValuePair lookup(String identifier) {
         Iterator<Map<String, TypeValuePair>> iterator = table.iterator();
 
+        //Scopes from this index onwards are shared with the table this one is a snapshot of
+        int firstSharedScope = table.size() - sharedScopes;
+        int i = 0;
+
         if (!table.isEmpty()) {
             do {
                 Map<String, TypeValuePair> map = iterator.next();
+                TypeValuePair pair = map.get(identifier);
 
-                if (map.containsKey(identifier)) {
-                    return map.get(identifier);
+                if (pair != null && (i < firstSharedScope || pair.insertion < sharedInsertions)) {
+                    return pair;
                 }
+
+                i++;
             } while (iterator.hasNext());
         }
 
@@ -24,6 +24,15 @@ public class InterpretationVisitor implements ASTVisitor {
 
     private final Map<String, ASTStruct> registeredStructs;
 
+    //Whether operator expressions are evaluated with an explicit stack instead of recursive calls
+    private boolean iterativeExpressions = false;
+
+    //Explicit stacks of the iterative evaluation, shared with the expressions evaluated inside it (e.g. function calls)
+    private final List<ASTExpression> pendingNodes = new ArrayList<>();
+    private final BitSet operandsEvaluated = new BitSet();
+    private final List<Type> operandTypes = new ArrayList<>();
+    private final List<Object> operandValues = new ArrayList<>();
+
     /**
      * Constructs the interpretation visitor
      * @param program the program to visit
@@ -36,6 +45,27 @@ public class InterpretationVisitor implements ASTVisitor {
         this.program = program;
     }
 
+    /**
+     * Constructs the interpretation visitor for a program which is run one top-level statement at a time, in
+     * source order, through visit(ASTStatement) (the global scopes are created here)
+     */
+    public InterpretationVisitor() {
+        this(null);
+
+        variableSymbolTable.push();
+        functionSymbolTable.push();
+    }
+
+    /**
+     * Enables or disables evaluating operator expressions with an explicit stack
+     * In this mode nested binary and unary operators are evaluated without recursive calls, so their nesting depth
+     * is only limited by the heap and not by the size of the thread stack. The results are the same.
+     * @param iterativeExpressions true to evaluate operator expressions with an explicit stack
+     */
+    public void setIterativeExpressions(boolean iterativeExpressions) {
+        this.iterativeExpressions = iterativeExpressions;
+    }
+
     /**
      * Begins the interpretation process
      */
@@ -422,6 +452,11 @@ public class InterpretationVisitor implements ASTVisitor {
      */
     @Override
     public void visit(ASTBinaryOperator operator) throws Exception {
+        if (iterativeExpressions) {
+            evaluateIteratively(operator);
+            return;
+        }
+
         visit(operator.expression1);
         String type1 = expressionType.lexeme;
         Object value1 = expressionValue;
@@ -430,7 +465,103 @@ public class InterpretationVisitor implements ASTVisitor {
         String type2 = expressionType.lexeme;
         Object value2 = expressionValue;
 
-        switch (operator.operator.tokenType) {
+        applyBinaryOperator(operator.operator.tokenType, type1, type2, value1, value2);
+    }
+
+    /**
+     * Evaluates an operator expression in the same order as the recursive visitors, keeping the operators whose
+     * operands are being evaluated and the operand values on explicit stacks
+     * @param root binary operator or unary node to evaluate
+     */
+    private void evaluateIteratively(ASTExpression root) throws Exception {
+        //Entries below the bases belong to the expression containing this one (if any)
+        int nodeBase = pendingNodes.size();
+        int operandBase = operandTypes.size();
+
+        try {
+            pendingNodes.add(root);
+
+            while (pendingNodes.size() > nodeBase) {
+                int top = pendingNodes.size() - 1;
+                ASTExpression node = pendingNodes.get(top);
+
+                if (!(node instanceof ASTBinaryOperator || node instanceof ASTUnary)) {
+                    //Other expressions do not nest operators directly
+                    pendingNodes.remove(top);
+                    visit(node);
+                } else if (!operandsEvaluated.get(top)) {
+                    //The operator stays on the stack until its operands are evaluated (the first operand on top)
+                    operandsEvaluated.set(top);
+
+                    if (node instanceof ASTBinaryOperator) {
+                        pendingNodes.add(((ASTBinaryOperator) node).expression2);
+                        pendingNodes.add(((ASTBinaryOperator) node).expression1);
+                    } else {
+                        pendingNodes.add(((ASTUnary) node).expression);
+                    }
+
+                    continue;
+                } else {
+                    pendingNodes.remove(top);
+                    operandsEvaluated.clear(top);
+
+                    if (node instanceof ASTBinaryOperator) {
+                        int operand = operandTypes.size() - 2;
+                        String type1 = operandTypes.get(operand).lexeme;
+                        String type2 = operandTypes.get(operand + 1).lexeme;
+                        Object value1 = operandValues.get(operand);
+                        Object value2 = operandValues.get(operand + 1);
+                        popOperands(operand);
+
+                        applyBinaryOperator(((ASTBinaryOperator) node).operator.tokenType, type1, type2, value1, value2);
+                    } else {
+                        int operand = operandTypes.size() - 1;
+                        expressionType = operandTypes.get(operand);
+                        expressionValue = operandValues.get(operand);
+                        popOperands(operand);
+
+                        applyUnary(((ASTUnary) node).unaryType);
+                    }
+                }
+
+                operandTypes.add(expressionType);
+                operandValues.add(expressionValue);
+            }
+
+            //The value of the root is left in expressionType and expressionValue
+            popOperands(operandBase);
+        } finally {
+            operandsEvaluated.clear(nodeBase, Math.max(pendingNodes.size(), nodeBase));
+
+            while (pendingNodes.size() > nodeBase) {
+                pendingNodes.remove(pendingNodes.size() - 1);
+            }
+
+            popOperands(operandBase);
+        }
+    }
+
+    /**
+     * Removes operands from the top of the operand stacks of the iterative evaluation
+     * @param size number of operands which are kept
+     */
+    private void popOperands(int size) {
+        while (operandTypes.size() > size) {
+            operandTypes.remove(operandTypes.size() - 1);
+            operandValues.remove(operandValues.size() - 1);
+        }
+    }
+
+    /**
+     * Applies a binary operator, leaving the result in expressionType and expressionValue
+     * @param operator token type of the operator
+     * @param type1 type of first operand
+     * @param type2 type of second operand
+     * @param value1 value of first operand
+     * @param value2 value of second operand
+     */
+    private void applyBinaryOperator(TokenType operator, String type1, String type2, Object value1, Object value2) {
+        switch (operator) {
             case ADD:
                 expressionType = add(type1, type2, value1, value2);
                 break;
@@ -779,7 +910,7 @@ public class InterpretationVisitor implements ASTVisitor {
 
         hasReturned = false;
 
-        visit(declaredFunction.functionBlock);
+        visit(declaredFunction.getFunctionBlock());
 
         hasReturned = false;
 
@@ -892,9 +1023,21 @@ public class InterpretationVisitor implements ASTVisitor {
      */
     @Override
     public void visit(ASTUnary astUnary) throws Exception {
+        if (iterativeExpressions) {
+            evaluateIteratively(astUnary);
+            return;
+        }
+
         visit(astUnary.expression);
+        applyUnary(astUnary.unaryType);
+    }
 
-        if (astUnary.unaryType == TokenType.SUB) {
+    /**
+     * Applies a unary operator to the value in expressionType and expressionValue
+     * @param unaryType unary operator
+     */
+    private void applyUnary(TokenType unaryType) {
+        if (unaryType == TokenType.SUB) {
             if ("float".equals(expressionType.lexeme)) {
                 expressionValue = -Float.parseFloat(expressionValue.toString());
                 expressionType = Type.FLOAT;
@@ -1013,7 +1156,7 @@ public class InterpretationVisitor implements ASTVisitor {
         variableSymbolTable = struct.variableSymbolTable;
         functionSymbolTable = struct.functionSymbolTable;
 
-        visit(declaredFunction.functionBlock);
+        visit(declaredFunction.getFunctionBlock());
 
         struct.variableSymbolTable = variableSymbolTable;
         struct.functionSymbolTable = functionSymbolTable;
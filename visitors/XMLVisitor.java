@@ -20,7 +20,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 
-//Visitor to generate XML representation of abstract syntax tree
+/*
+    Visitor to generate XML representation of abstract syntax tree
+    Unlike the parser and the other visitors, it has no explicit-stack mode for deeply nested expressions, since the
+    serialiser used by printDocument() is recursive itself (with a 512 KB thread stack it already overflows at a few
+    thousand nested elements). Writing the XML file is therefore the only step whose expression depth is limited by
+    the thread stack (Main.compileStreaming() does not write it).
+ */
 public class XMLVisitor implements ASTVisitor {
     public Document xmlDocument;
     private Element currentElement;
@@ -167,7 +173,12 @@ public class XMLVisitor implements ASTVisitor {
             i++;
         }
 
-        visit(astFunctionDeclaration.functionBlock);
+        //The body of a lazily parsed function which has not been used yet is not parsed just to be written
+        if (astFunctionDeclaration.isFunctionBlockParsed()) {
+            visit(astFunctionDeclaration.functionBlock);
+        } else {
+            currentElement.appendChild(xmlDocument.createElement("UnparsedBlock"));
+        }
 
         currentElement = parentElement;
     }